@@ -0,0 +1,49 @@
+package com.quark.chatformatter.bench;
+
+import com.quark.chatformatter.format.LineBreaks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining lines with a literal {@code \n} for the clipboard, and splitting them back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CopyBenchmark {
+    @Param({"LINE", "MOTD", "BOOK"})
+    public DocumentSize size;
+
+    private String text;
+    private String joined;
+
+    @Setup
+    public void setUp() {
+        text = size.text(false);
+        joined = LineBreaks.join(text);
+    }
+
+    @Benchmark
+    public String join() {
+        return LineBreaks.join(text);
+    }
+
+    @Benchmark
+    public String split() {
+        return LineBreaks.split(joined);
+    }
+}
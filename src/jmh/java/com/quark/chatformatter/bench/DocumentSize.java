@@ -0,0 +1,48 @@
+package com.quark.chatformatter.bench;
+
+import com.quark.chatformatter.format.CodeForm;
+
+import java.util.Random;
+
+/**
+ * Generated code text of typical sizes, the same for every run.
+ */
+public enum DocumentSize {
+    LINE(1),
+    MOTD(2),
+    BOOK(10_000);
+
+    private static final String[] WORDS = {
+            "Welcome", "to", "the", "server", "play", "now", "join", "us", "vote", "shop", "spawn", "event"
+    };
+    private static final String CODES = "0123456789abcdeflmnokr";
+
+    private final int lines;
+
+    DocumentSize(int lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Lines of about sixty characters with a code before roughly every other word, written with
+     * {@code \\u00A7} escapes when {@code escaped} is set.
+     */
+    public String text(boolean escaped) {
+        Random random = new Random(42);
+        StringBuilder out = new StringBuilder(lines * 64);
+        for (int line = 0; line < lines; line++) {
+            if (line > 0) {
+                out.append('\n');
+            }
+            int start = out.length();
+            while (out.length() - start < 60) {
+                if (random.nextBoolean()) {
+                    out.append('§').append(CODES.charAt(random.nextInt(CODES.length())));
+                }
+                out.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+        }
+        String text = out.toString();
+        return escaped ? CodeForm.ESCAPED.convert(text, CodeForm.SECTION) : text;
+    }
+}
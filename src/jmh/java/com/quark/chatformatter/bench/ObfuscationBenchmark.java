@@ -0,0 +1,69 @@
+package com.quark.chatformatter.bench;
+
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.preview.ObfuscatedRuns;
+import com.quark.chatformatter.preview.ObfuscatedText;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.SegmentOps;
+import org.fxmisc.richtext.model.TextOps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One obfuscation frame without the scene graph: fresh random text and a replacement document for
+ * every {@code §k} run, as if all of them were visible. Also the run collection done after each
+ * preview update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ObfuscationBenchmark {
+    private static final TextOps<String, String> SEG_OPS = SegmentOps.styledTextOps();
+    private static final String PARAGRAPH_STYLE = "-fx-text-alignment: center;";
+    private static final String STYLE = "-fx-fill: #55FF55; ";
+
+    @Param({"LINE", "MOTD", "BOOK"})
+    public DocumentSize size;
+
+    private SpanList spans;
+    private List<int[]> runs;
+    private final ObfuscatedText random = new ObfuscatedText();
+
+    @Setup
+    public void setUp() {
+        spans = FormatParser.parse(size.text(false), false);
+        runs = ObfuscatedRuns.collect(spans);
+    }
+
+    @Benchmark
+    public void frame(Blackhole blackhole) {
+        for (int[] line : runs) {
+            for (int i = 0; i < line.length; i += 3) {
+                blackhole.consume(ReadOnlyStyledDocument.fromString(
+                        random.next(line[i + 1] - line[i]), PARAGRAPH_STYLE, STYLE, SEG_OPS));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<int[]> collectRuns() {
+        return ObfuscatedRuns.collect(spans);
+    }
+}
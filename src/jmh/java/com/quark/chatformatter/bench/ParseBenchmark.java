@@ -0,0 +1,76 @@
+package com.quark.chatformatter.bench;
+
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.ParagraphDocument;
+import com.quark.chatformatter.format.ParsedDocument;
+import com.quark.chatformatter.format.SpanList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Preview parsing: a full parse, as on a mode switch, and the incremental parse of one typed
+ * character in the middle of the document, as one stream and paragraph by paragraph.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    @Param({"LINE", "MOTD", "BOOK"})
+    public DocumentSize size;
+
+    @Param({"false", "true"})
+    public boolean motd;
+
+    private String source;
+    private String edited;
+    private int middle;
+    private ParsedDocument document;
+    private ParagraphDocument<Integer> paragraphs;
+    private boolean typed;
+
+    @Setup
+    public void setUp() {
+        source = size.text(motd);
+        middle = source.length() / 2;
+        edited = source.substring(0, middle) + 'x' + source.substring(middle);
+        document = new ParsedDocument(motd);
+        document.reset(source, motd);
+        paragraphs = new ParagraphDocument<>(SpanList::length);
+        paragraphs.reset(source, motd);
+    }
+
+    @Benchmark
+    public SpanList fullParse() {
+        return FormatParser.parse(source, motd);
+    }
+
+    @Benchmark
+    public ParsedDocument.Change typeCharacter() {
+        typed = !typed;
+        return typed
+                ? document.edit(edited, middle, middle, middle + 1)
+                : document.edit(source, middle, middle + 1, middle);
+    }
+
+    @Benchmark
+    public ParagraphDocument.Change<Integer> typeCharacterParagraphs() {
+        typed = !typed;
+        return typed
+                ? paragraphs.edit(edited, middle, middle, middle + 1)
+                : paragraphs.edit(source, middle, middle + 1, middle);
+    }
+}
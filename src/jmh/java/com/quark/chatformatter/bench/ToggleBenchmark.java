@@ -0,0 +1,59 @@
+package com.quark.chatformatter.bench;
+
+import com.quark.chatformatter.format.FormatToggle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Toolbar toggles over a selection in the middle of the document, in chat and MOTD mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ToggleBenchmark {
+    @Param({"LINE", "MOTD", "BOOK"})
+    public DocumentSize size;
+
+    @Param({"false", "true"})
+    public boolean motd;
+
+    private String text;
+    private int selectionStart;
+    private int selectionEnd;
+
+    @Setup
+    public void setUp() {
+        text = size.text(motd);
+        selectionStart = text.length() / 2;
+        selectionEnd = Math.min(text.length(), selectionStart + 24);
+    }
+
+    @Benchmark
+    public FormatToggle.Result toggleFormat() {
+        return FormatToggle.toggle(text, selectionStart, selectionEnd, 'l', motd);
+    }
+
+    @Benchmark
+    public FormatToggle.Result toggleColor() {
+        return FormatToggle.toggle(text, selectionStart, selectionEnd, 'c', motd);
+    }
+
+    @Benchmark
+    public FormatToggle.Result insertAtCaret() {
+        return FormatToggle.toggle(text, selectionStart, selectionStart, 'a', motd);
+    }
+}
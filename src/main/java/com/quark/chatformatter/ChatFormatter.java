@@ -1,15 +1,27 @@
 package com.quark.chatformatter;
 
+import javafx.animation.PauseTransition;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.scene.image.Image;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.Objects;
 
 public class ChatFormatter extends Application {
+    /** Prints the time from process start to the first rendered frame. */
+    private static final String STARTUP_REPORT = "chatformatter.startupReport";
+    /** Exits right after the first frame, for startup benchmarks. */
+    private static final String EXIT_AFTER_FIRST_FRAME = "chatformatter.exitAfterFirstFrame";
+    /** Runs the editing paths once after the first frame, then exits: the class-data sharing training run. */
+    private static final String TRAIN = "chatformatter.train";
+
     @Override
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(ChatFormatter.class.getResource("main.fxml"));
@@ -21,9 +33,36 @@ public class ChatFormatter extends Application {
         stage.getIcons().add(icon);
 
         stage.setScene(scene);
+        if (Boolean.getBoolean(STARTUP_REPORT) || Boolean.getBoolean(EXIT_AFTER_FIRST_FRAME)) {
+            reportFirstFrame(scene);
+        }
+        if (Boolean.getBoolean(TRAIN)) {
+            MainController controller = fxmlLoader.getController();
+            Platform.runLater(() -> {
+                controller.exercise();
+                PauseTransition settle = new PauseTransition(Duration.seconds(1));
+                settle.setOnFinished(event -> Platform.exit());
+                settle.play();
+            });
+        }
         stage.show();
     }
 
+    private static void reportFirstFrame(Scene scene) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                scene.removePostLayoutPulseListener(this);
+                Instant start = ProcessHandle.current().info().startInstant().orElse(Instant.now());
+                System.out.println("first frame after " + ChronoUnit.MILLIS.between(start, Instant.now()) + " ms");
+                if (Boolean.getBoolean(EXIT_AFTER_FIRST_FRAME)) {
+                    Platform.runLater(Platform::exit);
+                }
+            }
+        };
+        scene.addPostLayoutPulseListener(listener);
+    }
+
     public static void main(String[] args) {
         launch();
     }
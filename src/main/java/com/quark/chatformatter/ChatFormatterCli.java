@@ -0,0 +1,314 @@
+package com.quark.chatformatter;
+
+import com.quark.chatformatter.batch.BatchConverter;
+import com.quark.chatformatter.format.CodeForm;
+import com.quark.chatformatter.format.CodeMinifier;
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.GlyphWidths;
+import com.quark.chatformatter.format.LineBreaks;
+import com.quark.chatformatter.format.LineCentering;
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.render.TextImageRenderer;
+import com.quark.chatformatter.server.FormatServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command-line entry point that works without JavaFX.
+ */
+public final class ChatFormatterCli {
+    private static final String USAGE = """
+            usage: chatformatter-cli convert --to FORM [--from FORM] [--newlines keep|join|split]
+                                             [--minify] [--threads N] [--out DIR] [FILE...]
+                   chatformatter-cli measure [--from FORM] [--width PX] [--lines N] [--threads N]
+                                             [FILE...]
+                   chatformatter-cli render --out DIR [--from FORM] [--scale N] [--threads N]
+                                            [FILE...]
+                   chatformatter-cli serve [--host HOST] [--port PORT]
+
+              FORM is one of: section (§), escaped (\\u00A7), ampersand (&), json. The default
+              source form is section; json converts to or from text components. Without files,
+              standard input is converted to standard output; without --out, files are written
+              to standard output one after another. --minify rewrites each record with the
+              fewest codes that render the same and reports the bytes saved.
+
+              measure prints the pixel width of every line of each record, with literal \\n
+              separating lines, and flags records wider than --width (default 270, the server
+              list) or longer than --lines (default 2).
+
+              render draws each record as the preview shows it to a PNG in DIR, named after a
+              hash of the record, and prints the file names in input order. --scale is the GUI
+              scale (default 2).
+
+              serve runs a local HTTP service with POST /parse, /convert, /minify and /measure,
+              taking code text as the body and options as query parameters (batch=true for one
+              record per line), and GET /stats. It listens on 127.0.0.1:8085 by default.
+            """;
+
+    private ChatFormatterCli() {
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    static int run(String[] args, InputStream in, PrintStream out, PrintStream err) {
+        if (args.length == 0) {
+            err.print(USAGE);
+            return 2;
+        }
+        String[] rest = Arrays.copyOfRange(args, 1, args.length);
+        try {
+            return switch (args[0]) {
+                case "convert" -> convert(rest, in, out, err);
+                case "measure" -> measure(rest, in, out, err);
+                case "render" -> render(rest, in, out);
+                case "serve" -> serve(rest, out);
+                case "help", "--help", "-h" -> {
+                    out.print(USAGE);
+                    yield 0;
+                }
+                default -> throw new IllegalArgumentException("Unknown command: " + args[0]);
+            };
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println("chatformatter-cli: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private static int convert(String[] args, InputStream in, PrintStream out, PrintStream err) throws IOException {
+        String from = "section";
+        String to = null;
+        BatchConverter.Newlines newlines = BatchConverter.Newlines.KEEP;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean minify = false;
+        Path outputDirectory = null;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = value(args, ++i);
+                case "--to" -> to = value(args, ++i);
+                case "--newlines" -> newlines = BatchConverter.Newlines.valueOf(value(args, ++i).toUpperCase(Locale.ROOT));
+                case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                case "--out" -> outputDirectory = Path.of(value(args, ++i));
+                case "--minify" -> minify = true;
+                default -> inputs.add(input(args[i]));
+            }
+        }
+        if (to == null) {
+            throw new IllegalArgumentException("Missing --to");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+
+        BatchConverter.Conversion conversion = BatchConverter.between(from, to);
+        LongAdder bytesIn = new LongAdder();
+        LongAdder bytesOut = new LongAdder();
+        if (minify) {
+            if (to.equals("json")) {
+                throw new IllegalArgumentException("--minify applies to code forms only");
+            }
+            BatchConverter.Conversion converted = conversion;
+            CodeForm target = CodeForm.of(to);
+            conversion = (record, buffer) -> {
+                StringBuilder plain = new StringBuilder(record.length());
+                converted.convert(record, plain);
+                String minified = target.convert(
+                        CodeMinifier.minify(CodeForm.SECTION.convert(plain, target), false), CodeForm.SECTION);
+                bytesIn.add(utf8Length(plain));
+                bytesOut.add(utf8Length(minified));
+                buffer.append(minified);
+            };
+        }
+
+        try (BatchConverter converter = new BatchConverter(conversion, newlines, threads)) {
+            if (inputs.isEmpty()) {
+                converter.convert(in, out);
+            } else if (outputDirectory != null) {
+                converter.convert(inputs, outputDirectory);
+            } else {
+                for (Path input : inputs) {
+                    try (InputStream file = Files.newInputStream(input)) {
+                        converter.convert(file, out);
+                    }
+                }
+            }
+        }
+        out.flush();
+        if (minify) {
+            err.println("minified " + bytesIn.sum() + " -> " + bytesOut.sum() + " bytes");
+        }
+        return 0;
+    }
+
+    private static int measure(String[] args, InputStream in, PrintStream out, PrintStream err) throws IOException {
+        CodeForm from = CodeForm.SECTION;
+        int width = LineCentering.MOTD_WIDTH;
+        int lines = LineCentering.MOTD_LINES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = CodeForm.of(value(args, ++i));
+                case "--width" -> width = Integer.parseInt(value(args, ++i));
+                case "--lines" -> lines = Integer.parseInt(value(args, ++i));
+                case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                default -> inputs.add(input(args[i]));
+            }
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+
+        CodeForm source = from;
+        int maxWidth = width;
+        int maxLines = lines;
+        LongAdder records = new LongAdder();
+        LongAdder overflowing = new LongAdder();
+        BatchConverter.Conversion measure = (record, buffer) -> {
+            SpanList spans = FormatParser.parse(LineBreaks.split(CodeForm.SECTION.convert(record, source)), false);
+            int[] widths = GlyphWidths.lineWidths(spans);
+            for (int i = 0; i < widths.length; i++) {
+                if (i > 0) {
+                    buffer.append(',');
+                }
+                buffer.append(widths[i]);
+            }
+            String overflow = LineCentering.overflow(spans, maxWidth, maxLines);
+            if (overflow != null) {
+                buffer.append('\t').append(overflow);
+                overflowing.increment();
+            }
+            records.increment();
+        };
+
+        try (BatchConverter converter = new BatchConverter(measure, BatchConverter.Newlines.KEEP, threads)) {
+            if (inputs.isEmpty()) {
+                converter.convert(in, out);
+            } else {
+                for (Path input : inputs) {
+                    try (InputStream file = Files.newInputStream(input)) {
+                        converter.convert(file, out);
+                    }
+                }
+            }
+        }
+        out.flush();
+        err.println(overflowing.sum() + " of " + records.sum() + " records overflow");
+        return 0;
+    }
+
+    private static int render(String[] args, InputStream in, PrintStream out) throws IOException {
+        CodeForm from = CodeForm.SECTION;
+        int scale = TextImageRenderer.DEFAULT_SCALE;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDirectory = null;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from" -> from = CodeForm.of(value(args, ++i));
+                case "--scale" -> scale = Integer.parseInt(value(args, ++i));
+                case "--threads" -> threads = Integer.parseInt(value(args, ++i));
+                case "--out" -> outputDirectory = Path.of(value(args, ++i));
+                default -> inputs.add(input(args[i]));
+            }
+        }
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("Missing --out");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("--threads must be positive");
+        }
+        Files.createDirectories(outputDirectory);
+
+        BatchConverter.Conversion conversion =
+                BatchConverter.toImages(from, new TextImageRenderer(scale), outputDirectory);
+        try (BatchConverter converter = new BatchConverter(conversion, BatchConverter.Newlines.KEEP, threads)) {
+            if (inputs.isEmpty()) {
+                converter.convert(in, out);
+            } else {
+                for (Path input : inputs) {
+                    try (InputStream file = Files.newInputStream(input)) {
+                        converter.convert(file, out);
+                    }
+                }
+            }
+        }
+        out.flush();
+        return 0;
+    }
+
+    private static int serve(String[] args, PrintStream out) throws IOException {
+        String host = "127.0.0.1";
+        int port = FormatServer.DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = value(args, ++i);
+                case "--port" -> port = Integer.parseInt(value(args, ++i));
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        FormatServer server = new FormatServer(new InetSocketAddress(host, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        out.println("listening on http://" + host + ":" + server.address().getPort());
+        out.flush();
+        try {
+            Thread.currentThread().join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
+
+    private static int utf8Length(CharSequence text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The input file {@code arg} names, unless it looks like an option the command does not know.
+     */
+    private static Path input(String arg) {
+        if (arg.startsWith("--")) {
+            throw new IllegalArgumentException("Unknown option: " + arg);
+        }
+        return Path.of(arg);
+    }
+
+    static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+}
@@ -1,5 +1,19 @@
 package com.quark.chatformatter;
 
+import com.quark.chatformatter.format.CodeDocument;
+import com.quark.chatformatter.format.CodeMinifier;
+import com.quark.chatformatter.format.EditJournal;
+import com.quark.chatformatter.format.FormatToggle;
+import com.quark.chatformatter.format.Gradient;
+import com.quark.chatformatter.format.LengthValidator;
+import com.quark.chatformatter.format.LineBreaks;
+import com.quark.chatformatter.format.LineCentering;
+import com.quark.chatformatter.format.TextEdit;
+import com.quark.chatformatter.metrics.CopyEvent;
+import com.quark.chatformatter.metrics.ModeSwitchEvent;
+import com.quark.chatformatter.metrics.ToggleCodeEvent;
+import com.quark.chatformatter.preview.PreviewRenderer;
+import javafx.animation.Animation;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
@@ -7,30 +21,65 @@ import javafx.fxml.FXML;
 import javafx.geometry.Bounds;
 import javafx.scene.Scene;
 import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ColorPicker;
+import javafx.scene.control.ContextMenu;
 import javafx.scene.control.Label;
+import javafx.scene.control.MenuItem;
+import javafx.scene.control.SeparatorMenuItem;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.TextFormatter;
 import javafx.scene.input.Clipboard;
 import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyCodeCombination;
+import javafx.scene.input.KeyCombination;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
+import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import javafx.scene.text.TextAlignment;
 import javafx.stage.Popup;
 import javafx.stage.Window;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
 import org.fxmisc.richtext.InlineCssTextArea;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Locale;
 
 public class MainController {
+    private static final KeyCombination UNDO = new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination REDO = new KeyCodeCombination(KeyCode.Y, KeyCombination.SHORTCUT_DOWN);
+    private static final KeyCombination REDO_SHIFT =
+            new KeyCodeCombination(KeyCode.Z, KeyCombination.SHORTCUT_DOWN, KeyCombination.SHIFT_DOWN);
+
     @FXML
     private Button blackButton, darkBlueButton, darkGreenButton, darkAquaButton, darkRedButton, darkPurpleButton,
             goldButton, grayButton, darkGrayButton, blueButton, greenButton, aquaButton, redButton, lightPurpleButton,
             yellowButton, whiteButton, underlineButton, boldButton, italicButton, strikethroughButton, obfuscatedButton,
-            chatCodeButton, motdButton, copyButton, resetButton;
+            chatCodeButton, motdButton, centerButton, copyButton, resetButton, hexButton, gradientButton, rainbowButton;
+
+    @FXML
+    private ColorPicker hexColorPicker, gradientStartPicker, gradientEndPicker;
+
+    @FXML
+    private CheckBox minifyCheckBox, paragraphsCheckBox, hexGradientCheckBox;
+
+    @FXML
+    private ChoiceBox<TextAlignment> alignmentChoiceBox;
+
+    @FXML
+    private ChoiceBox<LengthValidator.Profile> limitChoiceBox;
+
+    @FXML
+    private Label overflowLabel, lengthLabel;
+
+    @FXML
+    private Label metricsLabel;
 
     @FXML
     private InlineCssTextArea previewTextArea;
@@ -38,25 +87,29 @@ public class MainController {
     @FXML
     private TextArea textCodeArea;
 
-    private Timeline obfuscationTimeline;
+    private PreviewRenderer previewRenderer;
+
+    private final CodeDocument codeDocument = new CodeDocument();
+
+    private final EditJournal journal = new EditJournal();
 
-    private final List<ObfuscationSegment> obfuscationSegments = new ArrayList<>();
+    private final LengthValidator lengthValidator = new LengthValidator(LengthValidator.Profile.CHAT);
+
+    /** Set while the journal replays a step, whose edits must not be recorded again. */
+    private boolean replaying;
+
+    /** Set while the code area is rewritten for a view change, which leaves the document as is. */
+    private boolean refreshingCodeArea;
+
+    private boolean syncingSelection;
 
     private boolean isMOTDMode = false;
 
-    private static class ObfuscationSegment {
-        int start;
-        int end;
-        String style;
-        int length;
-
-        ObfuscationSegment(int start, int end, String style) {
-            this.start = start;
-            this.end = end;
-            this.style = style;
-            this.length = end - start;
-        }
-    }
+    /** Built on first use; neither is needed to show the first frame. */
+    private Timeline metricsRefresh;
+    private Popup popup;
+    private Label popupLabel;
+    private Timeline popupHide;
 
     @FXML
     private void initialize() {
@@ -68,133 +121,94 @@ public class MainController {
         );
         colorButtons.forEach(this::setButtonClip);
 
-        textCodeArea.textProperty().addListener((observable, oldValue, newValue) -> {
-            applyCodesToPreview(newValue);
-        });
-
-        for (int i = 0; i < previewTextArea.getParagraphs().size(); i++) {
-            previewTextArea.setParagraphStyle(i, "-fx-text-alignment: center;");
-        }
-
-        boldButton.setOnAction(e -> {
-            toggleStyle("-fx-font-weight: bold;");
-            toggleCode("l", "r");
-        });
-        italicButton.setOnAction(e -> {
-            toggleStyle("-fx-font-style: italic;");
-            toggleCode("o", "r");
-        });
-        underlineButton.setOnAction(e -> {
-            toggleStyle("-fx-underline: true;");
-            toggleCode("n", "r");
+        previewRenderer = new PreviewRenderer(previewTextArea);
+        textCodeArea.setTextFormatter(new TextFormatter<>(this::onCodeAreaChange));
+        textCodeArea.selectionProperty().addListener((observable, oldValue, newValue) -> {
+            if (!previewTextArea.isFocused()) {
+                syncPreviewSelection();
+            }
         });
-        strikethroughButton.setOnAction(e -> {
-            toggleStyle("-fx-strikethrough: true;");
-            toggleCode("m", "r");
+        previewTextArea.selectionProperty().addListener((observable, oldValue, newValue) -> {
+            if (previewTextArea.isFocused()) {
+                syncCodeSelection();
+            }
         });
-        obfuscatedButton.setOnAction(e -> toggleCode("k", "r"));
 
-        resetButton.setOnAction(e -> {
-            resetStyle();
-            toggleCode("r", "r");
-        });
+        paragraphsCheckBox.selectedProperty().addListener((observable, oldValue, newValue) ->
+                previewRenderer.setParagraphMode(newValue));
+        alignmentChoiceBox.getItems().setAll(TextAlignment.LEFT, TextAlignment.CENTER, TextAlignment.RIGHT);
+        alignmentChoiceBox.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(TextAlignment alignment) {
+                String name = alignment.name().toLowerCase(Locale.ROOT);
+                return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            }
 
-        blackButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #000000;");
-            toggleCode("0", "r");
-        });
-        darkBlueButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #0000AA;");
-            toggleCode("1", "r");
-        });
-        darkGreenButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #00AA00;");
-            toggleCode("2", "r");
-        });
-        darkAquaButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #00AAAA;");
-            toggleCode("3", "r");
-        });
-        darkRedButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #AA0000;");
-            toggleCode("4", "r");
-        });
-        darkPurpleButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #AA00AA;");
-            toggleCode("5", "r");
-        });
-        goldButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #FFAA00;");
-            toggleCode("6", "r");
-        });
-        grayButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #AAAAAA;");
-            toggleCode("7", "r");
-        });
-        darkGrayButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #555555;");
-            toggleCode("8", "r");
-        });
-        blueButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #5555FF;");
-            toggleCode("9", "r");
-        });
-        greenButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #55FF55;");
-            toggleCode("a", "r");
-        });
-        aquaButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #55FFFF;");
-            toggleCode("b", "r");
-        });
-        redButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #FF5555;");
-            toggleCode("c", "r");
-        });
-        lightPurpleButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #FF55FF;");
-            toggleCode("d", "r");
-        });
-        yellowButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #FFFF55;");
-            toggleCode("e", "r");
+            @Override
+            public TextAlignment fromString(String string) {
+                return TextAlignment.valueOf(string.toUpperCase(Locale.ROOT));
+            }
         });
-        whiteButton.setOnAction(e -> {
-            toggleStyle("-fx-fill: #FFFFFF;");
-            toggleCode("f", "r");
+        alignmentChoiceBox.setValue(TextAlignment.CENTER);
+        alignmentChoiceBox.valueProperty().addListener((observable, oldValue, newValue) ->
+                previewRenderer.setAlignment(newValue));
+        limitChoiceBox.getItems().setAll(LengthValidator.Profile.PRESETS);
+        limitChoiceBox.setValue(lengthValidator.profile());
+        limitChoiceBox.valueProperty().addListener((observable, oldValue, newValue) -> {
+            lengthValidator.setProfile(newValue);
+            updateOverflowWarning();
         });
 
+        boldButton.setOnAction(e -> toggleCode('l'));
+        italicButton.setOnAction(e -> toggleCode('o'));
+        underlineButton.setOnAction(e -> toggleCode('n'));
+        strikethroughButton.setOnAction(e -> toggleCode('m'));
+        obfuscatedButton.setOnAction(e -> toggleCode('k'));
+
+        resetButton.setOnAction(e -> toggleCode('r'));
+
+        hexColorPicker.setValue(Color.web("#FF8800"));
+        hexButton.setOnAction(e -> toggleHexColor(toRgb(hexColorPicker.getValue())));
+        gradientStartPicker.setValue(Color.web("#FF5555"));
+        gradientEndPicker.setValue(Color.web("#5555FF"));
+        gradientButton.setOnAction(e -> applyGradient(new int[]{
+                toRgb(gradientStartPicker.getValue()), toRgb(gradientEndPicker.getValue())}));
+        rainbowButton.setOnAction(e -> applyGradient(Gradient.RAINBOW));
+
+        blackButton.setOnAction(e -> toggleCode('0'));
+        darkBlueButton.setOnAction(e -> toggleCode('1'));
+        darkGreenButton.setOnAction(e -> toggleCode('2'));
+        darkAquaButton.setOnAction(e -> toggleCode('3'));
+        darkRedButton.setOnAction(e -> toggleCode('4'));
+        darkPurpleButton.setOnAction(e -> toggleCode('5'));
+        goldButton.setOnAction(e -> toggleCode('6'));
+        grayButton.setOnAction(e -> toggleCode('7'));
+        darkGrayButton.setOnAction(e -> toggleCode('8'));
+        blueButton.setOnAction(e -> toggleCode('9'));
+        greenButton.setOnAction(e -> toggleCode('a'));
+        aquaButton.setOnAction(e -> toggleCode('b'));
+        redButton.setOnAction(e -> toggleCode('c'));
+        lightPurpleButton.setOnAction(e -> toggleCode('d'));
+        yellowButton.setOnAction(e -> toggleCode('e'));
+        whiteButton.setOnAction(e -> toggleCode('f'));
+
         copyButton.setOnAction(e -> onCopyToClipboard());
 
-        motdButton.setOnAction(e -> {
-            isMOTDMode = true;
-            updateModeButtonStyles();
-            String currentText = textCodeArea.getText();
-            if (!currentText.isEmpty()) {
-                String updatedText = currentText.replace("§", "\\u00A7");
-                textCodeArea.setText(updatedText);
-            }
-            applyCodesToPreview(textCodeArea.getText());
-        });
+        motdButton.setOnAction(e -> setMOTDMode(true));
+        chatCodeButton.setOnAction(e -> setMOTDMode(false));
+        centerButton.setOnAction(e -> centerLines());
 
-        chatCodeButton.setOnAction(e -> {
-            isMOTDMode = false;
-            updateModeButtonStyles();
-            String currentText = textCodeArea.getText();
-            if (!currentText.isEmpty()) {
-                String updatedText = currentText.replace("\\u00A7", "§");
-                textCodeArea.setText(updatedText);
+        textCodeArea.sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (newScene != null) {
+                newScene.getAccelerators().put(new KeyCodeCombination(KeyCode.F3), this::toggleMetricsOverlay);
+                // A filter, so the text area's own undo never sees these keys.
+                newScene.addEventFilter(KeyEvent.KEY_PRESSED, this::onUndoRedoKey);
             }
-            applyCodesToPreview(textCodeArea.getText());
         });
+        textCodeArea.setContextMenu(codeAreaMenu());
 
         updateModeButtonStyles();
-
-        textCodeArea.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (!previewTextArea.getText().equals(newValue)) {
-                previewTextArea.replaceText(newValue);
-            }
-        });
+        updateOverflowWarning();
     }
 
     private void updateModeButtonStyles() {
@@ -219,289 +233,382 @@ public class MainController {
         });
     }
 
-    private void applyCodesToPreview(String codesText) {
-        final String processedCodesText = isMOTDMode
-                ? codesText.replaceAll("\\\\u00A7", "§")
-                : codesText;
+    /**
+     * Switches between showing codes as {@code §} and as MOTD escapes. Only the code area is
+     * rewritten; the document and the preview stay as they are.
+     */
+    private void setMOTDMode(boolean motd) {
+        isMOTDMode = motd;
+        updateModeButtonStyles();
+        // The limits follow the mode only while they are the other mode's default, not a profile
+        // the user picked.
+        LengthValidator.Profile other = motd ? LengthValidator.Profile.CHAT : LengthValidator.Profile.MOTD;
+        if (limitChoiceBox.getValue() == other) {
+            limitChoiceBox.setValue(motd ? LengthValidator.Profile.MOTD : LengthValidator.Profile.CHAT);
+        }
+        if (codeDocument.isEscaped() == motd) {
+            return;
+        }
+        ModeSwitchEvent event = new ModeSwitchEvent();
+        event.begin();
+        int anchor = codeDocument.toCanonical(textCodeArea.getAnchor(), false);
+        int caret = codeDocument.toCanonical(textCodeArea.getCaretPosition(), false);
+        String before = codeDocument.text();
+        TextEdit decoded = codeDocument.setEscaped(motd);
+        if (decoded != null) {
+            String removed = before.substring(decoded.start(), decoded.end());
+            journal.begin();
+            journal.record(decoded, removed);
+            journal.end();
+            documentChanged(decoded, removed);
+            updateOverflowWarning();
+        }
+        refreshingCodeArea = true;
+        try {
+            textCodeArea.setText(codeDocument.display());
+        } finally {
+            refreshingCodeArea = false;
+        }
+        textCodeArea.selectRange(codeDocument.toDisplay(anchor), codeDocument.toDisplay(caret));
+        if (event.shouldCommit()) {
+            event.documentLength = codeDocument.length();
+            event.spanCount = previewRenderer.spanCount();
+            event.motd = motd;
+            event.commit();
+        }
+    }
 
-        Platform.runLater(() -> {
-            if (obfuscationTimeline != null) {
-                obfuscationTimeline.stop();
-                obfuscationTimeline = null;
-            }
-            obfuscationSegments.clear();
-            previewTextArea.clear();
-
-            int index = 0;
-            StringBuilder segmentBuffer = new StringBuilder();
-            String colorStyle = "";
-            String formatStyle = "";
-            boolean currentObfuscate = false;
-
-            Random random = new Random();
-            String charSet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
-
-            while (index < processedCodesText.length()) {
-                char c = processedCodesText.charAt(index);
-                if (c == '§' && index + 1 < processedCodesText.length()) {
-                    if (segmentBuffer.length() > 0) {
-                        String segment = segmentBuffer.toString();
-                        int segInsertStart = previewTextArea.getLength();
-                        String currentStyle = colorStyle + formatStyle;
-                        if (currentObfuscate) {
-                            StringBuilder obfSegment = new StringBuilder();
-                            for (int i = 0; i < segment.length(); i++) {
-                                obfSegment.append(charSet.charAt(random.nextInt(charSet.length())));
-                            }
-                            previewTextArea.appendText(obfSegment.toString());
-                            int segInsertEnd = previewTextArea.getLength();
-                            previewTextArea.setStyle(segInsertStart, segInsertEnd, currentStyle);
-                            obfuscationSegments.add(new ObfuscationSegment(segInsertStart, segInsertEnd, currentStyle));
-                        } else {
-                            previewTextArea.appendText(segment);
-                            int segInsertEnd = previewTextArea.getLength();
-                            previewTextArea.setStyle(segInsertStart, segInsertEnd, currentStyle);
-                        }
-                        segmentBuffer.setLength(0);
-                    }
-                    char code = processedCodesText.charAt(index + 1);
-                    index += 2;
-                    switch (code) {
-                        case '0': colorStyle = "-fx-fill: #000000; "; break;
-                        case '1': colorStyle = "-fx-fill: #0000AA; "; break;
-                        case '2': colorStyle = "-fx-fill: #00AA00; "; break;
-                        case '3': colorStyle = "-fx-fill: #00AAAA; "; break;
-                        case '4': colorStyle = "-fx-fill: #AA0000; "; break;
-                        case '5': colorStyle = "-fx-fill: #AA00AA; "; break;
-                        case '6': colorStyle = "-fx-fill: #FFAA00; "; break;
-                        case '7': colorStyle = "-fx-fill: #AAAAAA; "; break;
-                        case '8': colorStyle = "-fx-fill: #555555; "; break;
-                        case '9': colorStyle = "-fx-fill: #5555FF; "; break;
-                        case 'a': colorStyle = "-fx-fill: #55FF55; "; break;
-                        case 'b': colorStyle = "-fx-fill: #55FFFF; "; break;
-                        case 'c': colorStyle = "-fx-fill: #FF5555; "; break;
-                        case 'd': colorStyle = "-fx-fill: #FF55FF; "; break;
-                        case 'e': colorStyle = "-fx-fill: #FFFF55; "; break;
-                        case 'f': colorStyle = "-fx-fill: #FFFFFF; "; break;
-                        case 'l': formatStyle += "-fx-font-weight: bold; "; break;
-                        case 'o': formatStyle += "-fx-font-style: italic; "; break;
-                        case 'n': formatStyle += "-fx-underline: true; "; break;
-                        case 'm': formatStyle += "-fx-strikethrough: true; "; break;
-                        case 'k': currentObfuscate = true; break;
-                        case 'r':
-                            colorStyle = "";
-                            formatStyle = "";
-                            currentObfuscate = false;
-                            break;
-                        default:
-                            segmentBuffer.append("§").append(code);
-                            break;
-                    }
-                } else {
-                    segmentBuffer.append(c);
-                    index++;
-                }
-            }
-            if (segmentBuffer.length() > 0) {
-                String segment = segmentBuffer.toString();
-                int segInsertStart = previewTextArea.getLength();
-                String currentStyle = colorStyle + formatStyle;
-                if (currentObfuscate) {
-                    StringBuilder obfSegment = new StringBuilder();
-                    for (int i = 0; i < segment.length(); i++) {
-                        obfSegment.append(charSet.charAt(random.nextInt(charSet.length())));
-                    }
-                    previewTextArea.appendText(obfSegment.toString());
-                    int segInsertEnd = previewTextArea.getLength();
-                    previewTextArea.setStyle(segInsertStart, segInsertEnd, currentStyle);
-                    obfuscationSegments.add(new ObfuscationSegment(segInsertStart, segInsertEnd, currentStyle));
-                } else {
-                    previewTextArea.appendText(segment);
-                    int segInsertEnd = previewTextArea.getLength();
-                    previewTextArea.setStyle(segInsertStart, segInsertEnd, currentStyle);
-                }
-            }
-            if (!obfuscationSegments.isEmpty()) {
-                obfuscationTimeline = new Timeline(new KeyFrame(Duration.millis(50), event -> {
-                    for (ObfuscationSegment seg : obfuscationSegments) {
-                        StringBuilder newObf = new StringBuilder();
-                        for (int i = 0; i < seg.length; i++) {
-                            newObf.append(charSet.charAt(random.nextInt(charSet.length())));
-                        }
-                        previewTextArea.replaceText(seg.start, seg.start + seg.length, newObf.toString());
-                        previewTextArea.setStyle(seg.start, seg.start + seg.length, seg.style);
-                    }
-                }));
-                obfuscationTimeline.setCycleCount(Timeline.INDEFINITE);
-                obfuscationTimeline.play();
-            }
-        });
+    /**
+     * Selects in the preview the text selected in the code area.
+     */
+    private void syncPreviewSelection() {
+        if (syncingSelection) {
+            return;
+        }
+        // The preview may still be catching up with the latest edit.
+        int length = previewTextArea.getLength();
+        int anchor = codeDocument.toVisible(codeDocument.toCanonical(textCodeArea.getAnchor(), false));
+        int caret = codeDocument.toVisible(codeDocument.toCanonical(textCodeArea.getCaretPosition(), false));
+        syncingSelection = true;
+        try {
+            previewTextArea.selectRange(Math.min(anchor, length), Math.min(caret, length));
+        } finally {
+            syncingSelection = false;
+        }
     }
 
-    @FXML
-    private void toggleStyle(String newStyle) {
-        int start = previewTextArea.getSelection().getStart();
-        int end = previewTextArea.getSelection().getEnd();
-        if (start == end) {
+    /**
+     * Selects in the code area the text selected in the preview, so the formatting buttons apply
+     * to it. The selection starts after the codes in front of it and ends before those behind it.
+     */
+    private void syncCodeSelection() {
+        if (syncingSelection) {
             return;
         }
-        String currentStyle = previewTextArea.getStyleAtPosition(start);
-        if (currentStyle == null || !currentStyle.contains(newStyle)) {
-            String combinedStyle = (currentStyle == null ? "" : currentStyle + " ") + newStyle;
-            previewTextArea.setStyle(start, end, combinedStyle.trim());
+        int anchor = previewTextArea.getAnchor();
+        int caret = previewTextArea.getCaretPosition();
+        int canonicalAnchor = codeDocument.fromVisible(anchor, anchor <= caret);
+        int canonicalCaret = codeDocument.fromVisible(caret, caret <= anchor);
+        syncingSelection = true;
+        try {
+            textCodeArea.selectRange(codeDocument.toDisplay(canonicalAnchor), codeDocument.toDisplay(canonicalCaret));
+        } finally {
+            syncingSelection = false;
+        }
+    }
+
+    /**
+     * Mirrors every edit of the code area into the document and the preview.
+     */
+    private TextFormatter.Change onCodeAreaChange(TextFormatter.Change change) {
+        if (refreshingCodeArea || !change.isContentChange()) {
+            return change;
+        }
+        String text = change.getText();
+        if (codeDocument.isEscaped() && text.indexOf('§') >= 0) {
+            // Escaped view shows every code as an escape, including pasted ones.
+            text = codeDocument.encode(text);
+            change.setText(text);
+            int caret = change.getRangeStart() + text.length();
+            change.selectRange(caret, caret);
+        }
+        TextEdit edit = codeDocument.canonicalEdit(change.getRangeStart(), change.getRangeEnd(), text);
+        String removed = codeDocument.apply(edit);
+        if (!replaying) {
+            journal.record(edit, removed);
+        }
+        if (!edit.isEmpty()) {
+            documentChanged(edit, removed);
+            updateOverflowWarning();
         }
+        return change;
     }
 
-    private void toggleCode(String code, String endCode) {
-        String prefix = isMOTDMode ? "\\u00A7" : "§";
-        String startCode = prefix + code;
-        String fullEndCode = prefix + endCode;
+    /**
+     * Passes an edit of the document, which replaced {@code removed}, on to everything that
+     * follows it.
+     */
+    private void documentChanged(TextEdit edit, String removed) {
+        previewRenderer.update(edit);
+        lengthValidator.update(codeDocument.chars(), edit, removed);
+    }
 
-        int selStart = textCodeArea.getSelection().getStart();
-        int selEnd = textCodeArea.getSelection().getEnd();
-        String fullText = textCodeArea.getText();
+    private void toggleCode(char code) {
+        ToggleCodeEvent event = new ToggleCodeEvent();
+        event.begin();
+        int selectionStart = codeDocument.toCanonical(textCodeArea.getSelection().getStart(), false);
+        int selectionEnd = codeDocument.toCanonical(textCodeArea.getSelection().getEnd(), true);
+        FormatToggle.Result result = FormatToggle.toggle(codeDocument.text(), selectionStart, selectionEnd, code, false);
+        applyResult(result);
+        if (event.shouldCommit()) {
+            event.documentLength = codeDocument.length();
+            event.spanCount = previewRenderer.spanCount();
+            event.code = code;
+            event.selectionLength = selectionEnd - selectionStart;
+            event.edits = result.edits().size();
+            event.commit();
+        }
+    }
 
-        boolean isColorCode = code.matches("[0-9a-f]");
+    /**
+     * Applies a hex colour to the selection like a colour button, written {@code §x§R§R§G§G§B§B}.
+     */
+    private void toggleHexColor(int rgb) {
+        int selectionStart = codeDocument.toCanonical(textCodeArea.getSelection().getStart(), false);
+        int selectionEnd = codeDocument.toCanonical(textCodeArea.getSelection().getEnd(), true);
+        applyResult(FormatToggle.toggleHex(codeDocument.text(), selectionStart, selectionEnd, rgb, false));
+    }
 
-        String before = fullText.substring(0, selStart);
-        String selected = fullText.substring(selStart, selEnd);
-        String after = fullText.substring(selEnd);
+    /**
+     * Applies the edits of a formatting tool as one undo step and selects the formatted text.
+     */
+    private void applyResult(FormatToggle.Result result) {
+        // Edits come last to first, so mapping each one before applying it stays valid.
+        journal.begin();
+        try {
+            result.edits().forEach(this::replaceCanonical);
+        } finally {
+            journal.end();
+        }
+        textCodeArea.selectRange(codeDocument.toDisplay(result.selectionStart()),
+                codeDocument.toDisplay(result.selectionEnd()));
+    }
 
-        if (selStart == selEnd) {
-            textCodeArea.setText(before + startCode + after);
+    /**
+     * Colours the selection along {@code stops} with one edit, so the preview re-renders once.
+     */
+    private void applyGradient(int[] stops) {
+        int selectionStart = codeDocument.toCanonical(textCodeArea.getSelection().getStart(), false);
+        int selectionEnd = codeDocument.toCanonical(textCodeArea.getSelection().getEnd(), true);
+        if (selectionStart == selectionEnd) {
             return;
         }
+        applyResult(Gradient.apply(codeDocument.text(), selectionStart, selectionEnd, stops,
+                hexGradientCheckBox.isSelected()));
+    }
 
-        if (isColorCode) {
-            int expandedStart = selStart;
-            while (expandedStart >= 2) {
-                String possibleCode = fullText.substring(expandedStart - 2, expandedStart);
-                if ((!isMOTDMode && possibleCode.matches("§[0-9a-fk-or]")) ||
-                        (isMOTDMode && possibleCode.matches("\\\\u00A7[0-9a-fk-or]"))) {
-                    expandedStart -= 2;
-                } else {
-                    break;
-                }
-            }
-            before = fullText.substring(0, expandedStart);
-            selected = fullText.substring(expandedStart, selEnd);
-
-            Pattern p = Pattern.compile(isMOTDMode ? "^(\\\\u00A7[0-9a-fk-or]+)" : "^(§[0-9a-fk-or]+)");
-            Matcher m = p.matcher(selected);
-            String prefixCodes = "";
-            if (m.find()) {
-                prefixCodes = m.group();
-            }
-            String withoutColor = isMOTDMode
-                    ? prefixCodes.replaceAll("\\\\u00A7[0-9a-f]", "")
-                    : prefixCodes.replaceAll("§[0-9a-f]", "");
-            String newPrefix = startCode + withoutColor;
-            if (selected.startsWith(prefixCodes)) {
-                selected = selected.substring(prefixCodes.length());
-            }
-            selected = newPrefix + selected;
-            if (isMOTDMode) {
-                selected = selected.replaceAll("(\\\\u00A7r)+$", "");
-                after = after.replaceAll("^(\\\\u00A7r)+", "");
-            } else {
-                selected = selected.replaceAll("(§r)+$", "");
-                after = after.replaceAll("^(§r)+", "");
-            }
-            String newText = before + selected + fullEndCode + after;
-            if (isMOTDMode) {
-                newText = newText.replaceAll("(\\\\u00A7r){2,}", "\\\\u00A7r");
-            } else {
-                newText = newText.replaceAll("(§r){2,}", "§r");
+    private static int toRgb(Color color) {
+        return (int) Math.round(color.getRed() * 255) << 16 | (int) Math.round(color.getGreen() * 255) << 8
+                | (int) Math.round(color.getBlue() * 255);
+    }
+
+    /**
+     * Shows or hides render latency and animation frame statistics over the preview.
+     */
+    private void toggleMetricsOverlay() {
+        boolean show = !metricsLabel.isVisible();
+        metricsLabel.setVisible(show);
+        if (show) {
+            if (metricsRefresh == null) {
+                metricsRefresh = new Timeline(new KeyFrame(Duration.millis(500), e -> refreshMetrics()));
+                metricsRefresh.setCycleCount(Animation.INDEFINITE);
             }
-            textCodeArea.setText(newText);
-            return;
+            refreshMetrics();
+            metricsRefresh.play();
+        } else {
+            metricsRefresh.stop();
         }
+    }
+
+    private void refreshMetrics() {
+        metricsLabel.setText(previewRenderer.metrics().summary());
+    }
 
-        int codeLength = isMOTDMode ? 7 : 2;
-        String codeRegex = isMOTDMode ? "(\\\\u00A7.)" : "(§.)";
-        Pattern prefixPattern = Pattern.compile("^(" + codeRegex + ")+");
-        Matcher prefixMatcher = prefixPattern.matcher(selected);
-        String prefixCodes = "";
-        if (prefixMatcher.find()) {
-            prefixCodes = prefixMatcher.group();
+    /**
+     * Pads every line with spaces so it sits centred in the server list, or in the chat box
+     * outside MOTD mode.
+     */
+    private void centerLines() {
+        int width = isMOTDMode ? LineCentering.MOTD_WIDTH : LineCentering.CHAT_WIDTH;
+        journal.begin();
+        try {
+            LineCentering.center(codeDocument.text(), width).forEach(this::replaceCanonical);
+        } finally {
+            journal.end();
         }
-        StringBuilder colorPrefix = new StringBuilder();
-        StringBuilder formatPrefix = new StringBuilder();
-        for (int i = 0; i < prefixCodes.length(); i += codeLength) {
-            String singleCode = prefixCodes.substring(i, i + codeLength);
-            char codeChar = isMOTDMode ? singleCode.charAt(codeLength - 1) : singleCode.charAt(1);
-            if (codeChar == 'r') continue;
-            if ((codeChar >= '0' && codeChar <= '9') ||
-                    (codeChar >= 'a' && codeChar <= 'f') ||
-                    (codeChar >= 'A' && codeChar <= 'F')) {
-                colorPrefix.append(singleCode);
-            } else {
-                formatPrefix.append(singleCode);
-            }
+    }
+
+    /**
+     * Applies an edit of the canonical text through the code area, so it reaches the document and
+     * the preview like typing does.
+     */
+    private void replaceCanonical(TextEdit edit) {
+        textCodeArea.replaceText(codeDocument.toDisplay(edit.start()), codeDocument.toDisplay(edit.end()),
+                codeDocument.encode(edit.text()));
+    }
+
+    private void onUndoRedoKey(KeyEvent event) {
+        if (UNDO.match(event)) {
+            replayJournal(true);
+            event.consume();
+        } else if (REDO.match(event) || REDO_SHIFT.match(event)) {
+            replayJournal(false);
+            event.consume();
         }
-        String newPrefix = colorPrefix.toString() + startCode + formatPrefix.toString();
-        selected = newPrefix + selected.substring(prefixCodes.length());
+    }
 
-        if (isMOTDMode) {
-            selected = selected.replaceAll("(\\\\u00A7r)+$", "");
-            after = after.replaceAll("^(\\\\u00A7r)+", "");
-        } else {
-            selected = selected.replaceAll("(§r)+$", "");
-            after = after.replaceAll("^(§r)+", "");
+    /**
+     * The code area's context menu, in place of the default one whose undo and redo would replay
+     * the area's own history rather than the journal.
+     */
+    private ContextMenu codeAreaMenu() {
+        MenuItem undo = new MenuItem("Undo");
+        undo.setOnAction(e -> replayJournal(true));
+        MenuItem redo = new MenuItem("Redo");
+        redo.setOnAction(e -> replayJournal(false));
+        MenuItem cut = new MenuItem("Cut");
+        cut.setOnAction(e -> textCodeArea.cut());
+        MenuItem copy = new MenuItem("Copy");
+        copy.setOnAction(e -> textCodeArea.copy());
+        MenuItem paste = new MenuItem("Paste");
+        paste.setOnAction(e -> textCodeArea.paste());
+        MenuItem delete = new MenuItem("Delete");
+        delete.setOnAction(e -> textCodeArea.replaceSelection(""));
+        MenuItem selectAll = new MenuItem("Select All");
+        selectAll.setOnAction(e -> textCodeArea.selectAll());
+        ContextMenu menu = new ContextMenu(undo, redo, new SeparatorMenuItem(), cut, copy, paste, delete,
+                new SeparatorMenuItem(), selectAll);
+        menu.setOnShowing(e -> {
+            boolean selected = textCodeArea.getSelection().getLength() > 0;
+            undo.setDisable(!journal.canUndo());
+            redo.setDisable(!journal.canRedo());
+            cut.setDisable(!selected);
+            copy.setDisable(!selected);
+            delete.setDisable(!selected);
+            paste.setDisable(!Clipboard.getSystemClipboard().hasString());
+        });
+        return menu;
+    }
+
+    /**
+     * Undoes or redoes one journal step and selects the text it restored.
+     */
+    private void replayJournal(boolean undo) {
+        TextEdit last;
+        replaying = true;
+        try {
+            last = undo
+                    ? journal.undo(codeDocument::chars, this::replaceCanonical)
+                    : journal.redo(codeDocument::chars, this::replaceCanonical);
+        } finally {
+            replaying = false;
         }
-        String newText = before + selected + fullEndCode + after;
-        if (isMOTDMode) {
-            newText = newText.replaceAll("(\\\\u00A7r){2,}", "\\\\u00A7r");
-        } else {
-            newText = newText.replaceAll("(§r){2,}", "§r");
+        if (last != null) {
+            textCodeArea.selectRange(codeDocument.toDisplay(last.start()),
+                    codeDocument.toDisplay(last.start() + last.text().length()));
         }
-        textCodeArea.setText(newText);
     }
 
-    @FXML
-    private void resetStyle() {
-        int start = previewTextArea.getSelection().getStart();
-        int end = previewTextArea.getSelection().getEnd();
-        if (start == end) {
-            return;
+    /**
+     * Shows the lengths of the text and warns about the limits of the chosen profile it exceeds,
+     * highlighting the text past them in the preview. The validator measures only what each edit
+     * changed, so this runs on every edit.
+     */
+    private void updateOverflowWarning() {
+        LengthValidator.Report report = lengthValidator.report();
+        lengthLabel.setText(report.length() + " chars, " + report.escapedLength() + " escaped, "
+                + report.visibleLength() + " shown, " + report.lines() + (report.lines() == 1 ? " line" : " lines"));
+        overflowLabel.setText(report.isValid() ? "" : "Too long: " + report.summary());
+        List<LengthValidator.Violation> violations = report.violations();
+        int[] ranges = new int[violations.size() * 2];
+        for (int i = 0; i < violations.size(); i++) {
+            ranges[2 * i] = violations.get(i).start();
+            ranges[2 * i + 1] = violations.get(i).end();
         }
-        previewTextArea.clearStyle(start, end);
+        previewRenderer.setHighlights(ranges);
+    }
+
+    /**
+     * Types, formats and switches modes once, so a training run loads the classes every edit needs.
+     */
+    void exercise() {
+        textCodeArea.replaceText(0, textCodeArea.getLength(), "§6Welcome to §lthe server\n§7§kxx§r play now");
+        textCodeArea.appendText("!");
+        textCodeArea.selectRange(0, 10);
+        toggleCode('l');
+        toggleCode('c');
+        setMOTDMode(true);
+        centerLines();
+        setMOTDMode(false);
+        textCodeArea.replaceText(0, textCodeArea.getLength(), "");
     }
 
     @FXML
     public void onCopyToClipboard() {
+        CopyEvent event = new CopyEvent();
+        event.begin();
         Clipboard clipboard = Clipboard.getSystemClipboard();
         ClipboardContent content = new ClipboardContent();
 
-        String sourceText = textCodeArea.getText();
-
-        String[] lines = sourceText.split("\n", -1);
-
-        String outputText = (lines.length > 1)
-                ? String.join("\\n", lines)
-                : sourceText;
+        String sourceText = codeDocument.text();
+        String outputText = LineBreaks.join(codeDocument.encode(minifyCheckBox.isSelected()
+                ? CodeMinifier.minify(sourceText, false)
+                : sourceText));
 
         content.putString(outputText);
         clipboard.setContent(content);
-        showPopup("Text copied!");
+        if (event.shouldCommit()) {
+            event.documentLength = sourceText.length();
+            event.spanCount = previewRenderer.spanCount();
+            event.minified = minifyCheckBox.isSelected();
+            event.copiedLength = outputText.length();
+            event.commit();
+        }
+        LengthValidator.Report report = lengthValidator.report();
+        String warning = report.isValid() ? ""
+                : "\nOver the " + lengthValidator.profile().name() + " limits: " + report.summary();
+        if (minifyCheckBox.isSelected()) {
+            showPopup("Text copied! " + utf8Length(LineBreaks.join(codeDocument.display())) + " → "
+                    + utf8Length(outputText) + " bytes" + warning);
+        } else {
+            showPopup("Text copied!" + warning);
+        }
+    }
+
+    private static int utf8Length(String text) {
+        return text.getBytes(StandardCharsets.UTF_8).length;
     }
 
     private void showPopup(String message) {
-        Popup popup = new Popup();
+        if (popup == null) {
+            popup = new Popup();
 
-        Label popupLabel = new Label(message);
-        popupLabel.getStyleClass().add("popup-message");
+            popupLabel = new Label();
+            popupLabel.getStyleClass().add("popup-message");
 
-        StackPane root = new StackPane(popupLabel);
-        Scene popupScene = new Scene(root);
-        popupScene.setFill(null);
+            StackPane root = new StackPane(popupLabel);
+            Scene popupScene = new Scene(root);
+            popupScene.setFill(null);
 
-        if (copyButton.getScene() != null && !copyButton.getScene().getStylesheets().isEmpty()) {
-            popupScene.getStylesheets().addAll(copyButton.getScene().getStylesheets());
-        }
+            if (copyButton.getScene() != null && !copyButton.getScene().getStylesheets().isEmpty()) {
+                popupScene.getStylesheets().addAll(copyButton.getScene().getStylesheets());
+            }
 
-        popup.getContent().add(root);
-        popup.setAutoHide(true);
+            popup.getContent().add(root);
+            popup.setAutoHide(true);
+            popupHide = new Timeline(new KeyFrame(Duration.seconds(2), event -> popup.hide()));
+        }
+        popupLabel.setText(message);
 
         Window window = copyButton.getScene().getWindow();
         popup.show(window);
@@ -516,7 +623,6 @@ public class MainController {
             popup.setY(y);
         });
 
-        Timeline timeline = new Timeline(new KeyFrame(Duration.seconds(2), event -> popup.hide()));
-        timeline.play();
+        popupHide.playFromStart();
     }
 }
\ No newline at end of file
@@ -0,0 +1,351 @@
+package com.quark.chatformatter.batch;
+
+import com.quark.chatformatter.format.CodeForm;
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.LineBreaks;
+import com.quark.chatformatter.format.TextComponents;
+import com.quark.chatformatter.render.TextImageRenderer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Streams code strings from files through a conversion between {@link CodeForm}s or to and from
+ * JSON text components, one record per line.
+ * <p>
+ * Each input is read on its own virtual thread and cut into chunks of whole records, which are
+ * converted on a shared pool sized to the machine and written back in input order. The number of
+ * chunks in flight across all inputs is capped, so memory stays bounded by that and the longest
+ * record however large the files are; a joined record may be at most {@link #MAX_JOINED_CHARS}
+ * long. A record that fails to convert stops the conversion with an error naming its line.
+ */
+public final class BatchConverter implements AutoCloseable {
+
+    /**
+     * What happens to line structure. {@link #JOIN} turns each block of consecutive non-blank lines
+     * into one record joined with a literal {@code \n}, like the copy button; {@link #SPLIT} does
+     * the reverse.
+     */
+    public enum Newlines {
+        KEEP, JOIN, SPLIT
+    }
+
+    /**
+     * Converts one record, appending the result to {@code out}.
+     */
+    @FunctionalInterface
+    public interface Conversion {
+        void convert(String record, StringBuilder out);
+    }
+
+    /** Longest record {@link Newlines#JOIN} builds before giving up on finding a blank line. */
+    public static final int MAX_JOINED_CHARS = 1 << 20;
+
+    private static final int CHUNK_CHARS = 1 << 16;
+
+    /**
+     * Records read together, with the input line each one starts on.
+     */
+    private static final class Chunk {
+        final List<String> records = new ArrayList<>();
+        int[] lines = new int[256];
+        int chars;
+
+        void add(String record, int line) {
+            if (records.size() == lines.length) {
+                lines = Arrays.copyOf(lines, lines.length << 1);
+            }
+            lines[records.size()] = line;
+            records.add(record);
+            chars += record.length();
+        }
+    }
+
+    private final Conversion conversion;
+    private final Newlines newlines;
+    private final ExecutorService workers;
+    private final Semaphore inFlight;
+
+    public BatchConverter(CodeForm from, CodeForm to, Newlines newlines) {
+        this(from, to, newlines, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchConverter(CodeForm from, CodeForm to, Newlines newlines, int threads) {
+        this((record, out) -> to.convert(record, from, out), newlines, threads);
+    }
+
+    public BatchConverter(Conversion conversion, Newlines newlines, int threads) {
+        this.conversion = conversion;
+        this.newlines = newlines;
+        this.workers = Executors.newFixedThreadPool(threads, Thread.ofPlatform().daemon().name("convert-", 0).factory());
+        this.inFlight = new Semaphore(threads * 4);
+    }
+
+    /**
+     * Converts a single record, without any chunking.
+     */
+    public String convert(String record) {
+        StringBuilder out = new StringBuilder(record.length() + 16);
+        conversion.convert(record, out);
+        String converted = out.toString();
+        return newlines == Newlines.SPLIT ? LineBreaks.split(converted) : converted;
+    }
+
+    /**
+     * Conversion between two forms named as {@link CodeForm#of} accepts them, or {@code json} for
+     * text components on either side.
+     */
+    public static Conversion between(String from, String to) {
+        if (from.equals("json")) {
+            return fromJson(CodeForm.of(to));
+        }
+        if (to.equals("json")) {
+            return toJson(CodeForm.of(from));
+        }
+        CodeForm source = CodeForm.of(from);
+        CodeForm target = CodeForm.of(to);
+        return (record, out) -> target.convert(record, source, out);
+    }
+
+    /**
+     * Code text in form {@code from} to a JSON component. A literal {@code \n} becomes a line
+     * break in the component text.
+     */
+    public static Conversion toJson(CodeForm from) {
+        return (record, out) -> TextComponents.write(
+                FormatParser.parse(LineBreaks.split(CodeForm.SECTION.convert(record, from)), false), out);
+    }
+
+    /**
+     * A JSON component to code text in form {@code to}, with line breaks written as a literal
+     * {@code \n} so the record stays on one line.
+     */
+    public static Conversion fromJson(CodeForm to) {
+        return (record, out) -> to.convert(LineBreaks.join(TextComponents.toCodes(record)), CodeForm.SECTION, out);
+    }
+
+    /**
+     * Code text in form {@code from} to a PNG in {@code outputDirectory}, named after a hash of the
+     * record so equal records share one image. The record is replaced by the image's file name.
+     */
+    public static Conversion toImages(CodeForm from, TextImageRenderer renderer, Path outputDirectory) {
+        return (record, out) -> {
+            String name;
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(record.getBytes(StandardCharsets.UTF_8));
+                name = HexFormat.of().formatHex(digest, 0, 8) + ".png";
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            Path file = outputDirectory.resolve(name);
+            if (!Files.exists(file)) {
+                try {
+                    renderer.write(LineBreaks.split(CodeForm.SECTION.convert(record, from)), file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            out.append(name);
+        };
+    }
+
+    /**
+     * Converts each input into the file of the same name in {@code outputDirectory}, running the
+     * inputs concurrently.
+     *
+     * @throws IllegalArgumentException if two inputs have the same name or an input would be
+     *                                  overwritten, before anything is written
+     */
+    public void convert(List<Path> inputs, Path outputDirectory) throws IOException {
+        Map<Path, Path> outputs = new LinkedHashMap<>();
+        for (Path input : inputs) {
+            Path output = outputDirectory.resolve(input.getFileName()).toAbsolutePath().normalize();
+            Path other = outputs.putIfAbsent(output, input);
+            if (other != null) {
+                throw new IllegalArgumentException(
+                        "Inputs " + other + " and " + input + " would both be written to " + output);
+            }
+            if (output.equals(input.toAbsolutePath().normalize())) {
+                throw new IllegalArgumentException("Input " + input + " would be overwritten by its output");
+            }
+        }
+        Files.createDirectories(outputDirectory);
+        List<Future<?>> files = new ArrayList<>();
+        try (ExecutorService readers = Executors.newVirtualThreadPerTaskExecutor()) {
+            outputs.forEach((output, input) -> files.add(readers.submit(() -> {
+                try {
+                    convert(input, output);
+                } catch (IOException e) {
+                    throw new IOException(input + ": " + e.getMessage(), e);
+                }
+                return null;
+            })));
+        }
+        for (Future<?> file : files) {
+            await(file);
+        }
+    }
+
+    public void convert(Path input, Path output) throws IOException {
+        try (InputStream in = Files.newInputStream(input);
+             OutputStream out = Files.newOutputStream(output)) {
+            convert(in, out);
+        }
+    }
+
+    /**
+     * Converts UTF-8 text from {@code in} to {@code out}. Neither stream is closed.
+     */
+    public void convert(InputStream in, OutputStream out) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), CHUNK_CHARS);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), CHUNK_CHARS);
+        ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+        try {
+            Chunk chunk = new Chunk();
+            StringBuilder block = new StringBuilder();
+            int blockLine = 0;
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (newlines == Newlines.JOIN) {
+                    if (!line.isBlank()) {
+                        if (block.isEmpty()) {
+                            blockLine = lineNumber;
+                        } else {
+                            block.append(LineBreaks.LITERAL);
+                        }
+                        block.append(line);
+                        if (block.length() > MAX_JOINED_CHARS) {
+                            throw new IOException("Line " + blockLine + ": lines joined without a blank line exceed "
+                                    + MAX_JOINED_CHARS + " characters");
+                        }
+                        continue;
+                    }
+                    if (!block.isEmpty()) {
+                        chunk.add(block.toString(), blockLine);
+                        block.setLength(0);
+                    }
+                }
+                chunk.add(line, lineNumber);
+                if (chunk.chars >= CHUNK_CHARS) {
+                    submit(chunk, pending, writer);
+                    chunk = new Chunk();
+                }
+            }
+            if (!block.isEmpty()) {
+                chunk.add(block.toString(), blockLine);
+            }
+            if (!chunk.records.isEmpty()) {
+                submit(chunk, pending, writer);
+            }
+            while (!pending.isEmpty()) {
+                write(pending.poll(), writer);
+            }
+            writer.flush();
+        } finally {
+            for (Future<String> future : pending) {
+                future.cancel(false);
+                inFlight.release();
+            }
+        }
+    }
+
+    private void submit(Chunk chunk, ArrayDeque<Future<String>> pending, Writer writer) throws IOException {
+        // Write out finished chunks first so a slow reader never holds permits it could free.
+        while (!pending.isEmpty() && pending.peek().isDone()) {
+            write(pending.poll(), writer);
+        }
+        while (!inFlight.tryAcquire()) {
+            if (pending.isEmpty()) {
+                acquire();
+                break;
+            }
+            write(pending.poll(), writer);
+        }
+        pending.add(CompletableFuture.supplyAsync(() -> convertChunk(chunk), workers));
+    }
+
+    private void write(Future<String> future, Writer writer) throws IOException {
+        try {
+            writer.write(await(future));
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private String convertChunk(Chunk chunk) {
+        StringBuilder out = new StringBuilder(CHUNK_CHARS + (CHUNK_CHARS >> 3));
+        for (int i = 0; i < chunk.records.size(); i++) {
+            String record = chunk.records.get(i);
+            try {
+                if (newlines == Newlines.SPLIT) {
+                    out.append(convert(record));
+                } else {
+                    conversion.convert(record, out);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + chunk.lines[i] + ": " + e.getMessage(), e);
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    private void acquire() throws IOException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting", e);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while converting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            if (cause instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,277 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Code text kept in its canonical {@code §} form, with the MOTD {@code \\u00A7} escaping applied
+ * only to what the editor shows.
+ * <p>
+ * The text is held in a {@link GapBuffer} and the positions of all {@code §} signs are indexed, so
+ * offsets map between the canonical text and the shown text in logarithmic time and switching
+ * between the plain and escaped view changes no text at all. The index is split at the last edit:
+ * signs before it are kept as offsets from the start, signs after it as distances from the end,
+ * so an edit moves only the signs between it and the previous one and shifts none. Edits made in
+ * the shown text are turned into edits of the canonical text, decoding any escape they complete
+ * or break. An {@link OffsetIndex} relates the canonical text to the preview.
+ */
+public final class CodeDocument {
+    private static final String ESCAPE = FormatParser.ESCAPED_SECTION;
+    private static final int EXTRA = ESCAPE.length() - 1;
+
+    private final GapBuffer buffer = new GapBuffer();
+    /** The canonical text as a string, built the first time it is asked for after an edit. */
+    private String text = "";
+    private boolean escaped;
+    /**
+     * Positions of the {@code §} signs in order: {@code sectionsBefore} offsets at the start of the
+     * array, then {@code sectionsAfter} distances from the end of the text at the end of it.
+     */
+    private int[] sections = new int[16];
+    private int sectionsBefore;
+    private int sectionsAfter;
+    /** Escapes typed literally while the escaped view was off. */
+    private int literalEscapes;
+    private final OffsetIndex visible = new OffsetIndex();
+
+    /**
+     * The canonical text.
+     */
+    public String text() {
+        if (text == null) {
+            text = buffer.toString();
+        }
+        return text;
+    }
+
+    /**
+     * The canonical text without copying it, as a view that follows later edits.
+     */
+    public CharSequence chars() {
+        return buffer;
+    }
+
+    public int length() {
+        return buffer.length();
+    }
+
+    public boolean isEscaped() {
+        return escaped;
+    }
+
+    /**
+     * Switches between the plain and escaped view, which only flips the view unless escapes were
+     * typed literally while it was off. Entering the escaped view decodes those, since they would
+     * show as codes from then on; returns the canonical edit that did so, or {@code null} if the
+     * text did not change.
+     */
+    public TextEdit setEscaped(boolean escaped) {
+        this.escaped = escaped;
+        if (!escaped || literalEscapes == 0) {
+            return null;
+        }
+        String text = text();
+        TextEdit edit = TextEdit.minimal(text, 0, text.length(), decode(text));
+        apply(edit);
+        return edit;
+    }
+
+    /**
+     * The text as shown in the current view.
+     */
+    public String display() {
+        return escaped ? encode(text()) : text();
+    }
+
+    /**
+     * {@code canonical} written as the current view shows it.
+     */
+    public String encode(String canonical) {
+        return escaped ? CodeForm.ESCAPED.convert(canonical, CodeForm.SECTION) : canonical;
+    }
+
+    /**
+     * Maps a canonical offset to the shown text.
+     */
+    public int toDisplay(int offset) {
+        return escaped ? offset + EXTRA * indexOf(offset) : offset;
+    }
+
+    /**
+     * Maps an offset in the shown text to the canonical text. An offset inside an escape maps to
+     * the {@code §} it stands for, or past it if {@code roundUp} is set.
+     */
+    public int toCanonical(int displayOffset, boolean roundUp) {
+        if (!escaped) {
+            return displayOffset;
+        }
+        // Find the number of escapes that start before the offset.
+        int low = 0;
+        int high = sectionsBefore + sectionsAfter;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (section(mid) + EXTRA * mid < displayOffset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low > 0) {
+            int section = section(low - 1);
+            if (displayOffset < section + EXTRA * (low - 1) + ESCAPE.length()) {
+                return section + (roundUp ? 1 : 0);
+            }
+        }
+        return displayOffset - EXTRA * low;
+    }
+
+    /**
+     * Maps a canonical offset to the preview text.
+     */
+    public int toVisible(int offset) {
+        return visible.toVisible(offset);
+    }
+
+    /**
+     * Maps a preview offset to the canonical text; see {@link OffsetIndex#toSource}.
+     */
+    public int fromVisible(int visibleOffset, boolean afterCodes) {
+        return visible.toSource(visibleOffset, afterCodes);
+    }
+
+    /**
+     * The canonical edit that replacing {@code [start, end)} of the shown text with
+     * {@code replacement} amounts to, which {@link #apply} then makes. In the escaped view the
+     * replacement must not contain a raw {@code §}.
+     */
+    public TextEdit canonicalEdit(int start, int end, String replacement) {
+        if (!escaped) {
+            return new TextEdit(start, end, replacement);
+        }
+        int from = toCanonical(start, false);
+        int to = toCanonical(end, true);
+        // Escapes can form with up to five literal characters on either side of the edit. An end
+        // inside an escape keeps the part of it outside the edit.
+        int windowStart = from;
+        while (windowStart > 0 && from - windowStart < EXTRA
+                && buffer.charAt(windowStart - 1) != FormatParser.SECTION) {
+            windowStart--;
+        }
+        int windowEnd = to;
+        while (windowEnd < buffer.length() && windowEnd - to < EXTRA
+                && buffer.charAt(windowEnd) != FormatParser.SECTION) {
+            windowEnd++;
+        }
+        String window = buffer.subSequence(windowStart, from)
+                + ESCAPE.substring(0, start - toDisplay(from))
+                + replacement
+                + ESCAPE.substring(ESCAPE.length() - (toDisplay(to) - end))
+                + buffer.subSequence(to, windowEnd);
+        return TextEdit.minimal(buffer, windowStart, windowEnd, decode(window));
+    }
+
+    /**
+     * Applies an edit of the canonical text and returns the text it replaced.
+     */
+    public String apply(TextEdit edit) {
+        int start = edit.start();
+        int length = buffer.length();
+        String inserted = edit.text();
+        int escapeWindow = Math.max(0, start - (ESCAPE.length() - 1));
+        literalEscapes -= countEscapes(escapeWindow, edit.end());
+
+        // Signs before the edit become offsets and signs after it stay distances from the end, so
+        // the replaced ones are at the split.
+        String removed = buffer.subSequence(start, edit.end());
+        moveSplit(start, length);
+        while (sectionsAfter > 0 && length - sections[sections.length - sectionsAfter] < edit.end()) {
+            sectionsAfter--;
+        }
+        int added = 0;
+        for (int i = inserted.indexOf(FormatParser.SECTION); i >= 0; i = inserted.indexOf(FormatParser.SECTION, i + 1)) {
+            added++;
+        }
+        if (sectionsBefore + sectionsAfter + added > sections.length) {
+            int capacity = Math.max(sectionsBefore + sectionsAfter + added, sections.length << 1);
+            int[] grown = new int[capacity];
+            System.arraycopy(sections, 0, grown, 0, sectionsBefore);
+            System.arraycopy(sections, sections.length - sectionsAfter, grown, capacity - sectionsAfter, sectionsAfter);
+            sections = grown;
+        }
+        for (int i = inserted.indexOf(FormatParser.SECTION); i >= 0; i = inserted.indexOf(FormatParser.SECTION, i + 1)) {
+            sections[sectionsBefore++] = start + i;
+        }
+
+        buffer.replace(start, edit.end(), inserted);
+        text = null;
+        literalEscapes += countEscapes(escapeWindow, start + inserted.length());
+        visible.update(buffer, edit);
+        return removed;
+    }
+
+    /**
+     * Position of the {@code index}th {@code §}.
+     */
+    private int section(int index) {
+        return index < sectionsBefore
+                ? sections[index]
+                : buffer.length() - sections[sections.length - sectionsAfter + index - sectionsBefore];
+    }
+
+    /**
+     * Moves the split of the sign index so the signs before {@code offset} are kept as offsets,
+     * {@code length} being the length of the text.
+     */
+    private void moveSplit(int offset, int length) {
+        while (sectionsBefore > 0 && sections[sectionsBefore - 1] >= offset) {
+            sectionsAfter++;
+            sections[sections.length - sectionsAfter] = length - sections[--sectionsBefore];
+        }
+        while (sectionsAfter > 0 && length - sections[sections.length - sectionsAfter] < offset) {
+            sections[sectionsBefore++] = length - sections[sections.length - sectionsAfter];
+            sectionsAfter--;
+        }
+    }
+
+    /**
+     * Index of the first indexed {@code §} at or after {@code offset}.
+     */
+    private int indexOf(int offset) {
+        int low = 0;
+        int high = sectionsBefore + sectionsAfter;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (section(mid) < offset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Number of escapes in the text starting in {@code [from, to)}.
+     */
+    private int countEscapes(int from, int to) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (buffer.charAt(i) == '\\' && FormatParser.isEscapedSection(buffer, i, buffer.length())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String decode(String display) {
+        return containsEscape(display)
+                ? CodeForm.SECTION.convert(display, CodeForm.ESCAPED)
+                : display;
+    }
+
+    private static boolean containsEscape(String text) {
+        for (int i = text.indexOf('\\'); i >= 0; i = text.indexOf('\\', i + 1)) {
+            if (FormatParser.isEscapedSection(text, i, text.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
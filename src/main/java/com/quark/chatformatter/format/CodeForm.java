@@ -0,0 +1,151 @@
+package com.quark.chatformatter.format;
+
+import java.util.Locale;
+
+/**
+ * The ways a formatting code marker is written: the raw {@code §} sign, the {@code \\u00A7}
+ * escape used in server MOTD configs, and the {@code &} alternate used by most plugins.
+ * <p>
+ * Hex colours are written as seven codes, {@code §x§R§R§G§G§B§B}, except in the {@code &} form,
+ * which uses the shorter {@code &#RRGGBB} and reads both.
+ */
+public enum CodeForm {
+    SECTION(String.valueOf(FormatParser.SECTION)),
+    ESCAPED(FormatParser.ESCAPED_SECTION),
+    AMPERSAND("&");
+
+    private final String marker;
+
+    CodeForm(String marker) {
+        this.marker = marker;
+    }
+
+    public String marker() {
+        return marker;
+    }
+
+    /**
+     * Returns the form with the given name or marker, for example {@code motd} or {@code &}.
+     */
+    public static CodeForm of(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "§", "section", "chat" -> SECTION;
+            case "\\u00a7", "escaped", "motd" -> ESCAPED;
+            case "&", "ampersand", "amp" -> AMPERSAND;
+            default -> throw new IllegalArgumentException("Unknown code form: " + name);
+        };
+    }
+
+    /**
+     * Rewrites every code marker of {@code text}, written in form {@code from}, into this form.
+     */
+    public String convert(CharSequence text, CodeForm from) {
+        StringBuilder out = new StringBuilder(text.length() + 16);
+        convert(text, from, out);
+        return out.toString();
+    }
+
+    public void convert(CharSequence text, CodeForm from, StringBuilder out) {
+        if (from == this) {
+            out.append(text);
+            return;
+        }
+        int length = text.length();
+        int copied = 0;
+        int index = 0;
+        char[] digits = new char[FormatParser.HEX_CODES - 1];
+        while (index < length) {
+            int hexEnd = from.hexColorEnd(text, index, length, digits);
+            if (hexEnd >= 0) {
+                out.append(text, copied, index);
+                appendHexColor(digits, out);
+                index = hexEnd;
+                copied = index;
+                continue;
+            }
+            int width = from.markerWidth(text, index, length);
+            if (width == 0) {
+                index++;
+                continue;
+            }
+            out.append(text, copied, index).append(marker);
+            index += width;
+            copied = index;
+        }
+        out.append(text, copied, length);
+    }
+
+    /**
+     * End of the hex colour written in this form at {@code index}, with its digits stored in
+     * {@code digits}, or -1 if there is none.
+     */
+    private int hexColorEnd(CharSequence text, int index, int length, char[] digits) {
+        if (this == AMPERSAND && index + digits.length + 2 <= length
+                && text.charAt(index) == '&' && text.charAt(index + 1) == '#') {
+            for (int i = 0; i < digits.length; i++) {
+                digits[i] = text.charAt(index + 2 + i);
+                if (Style.hexDigit(digits[i]) < 0) {
+                    return -1;
+                }
+            }
+            return index + digits.length + 2;
+        }
+        int width = signWidth(text, index, length);
+        if (width == 0 || index + width >= length || text.charAt(index + width) != FormatParser.HEX_CODE) {
+            return -1;
+        }
+        index += width + 1;
+        for (int i = 0; i < digits.length; i++) {
+            width = signWidth(text, index, length);
+            if (width == 0 || index + width >= length) {
+                return -1;
+            }
+            digits[i] = text.charAt(index + width);
+            if (Style.hexDigit(digits[i]) < 0) {
+                return -1;
+            }
+            index += width + 1;
+        }
+        return index;
+    }
+
+    private void appendHexColor(char[] digits, StringBuilder out) {
+        if (this == AMPERSAND) {
+            out.append("&#").append(digits);
+            return;
+        }
+        out.append(marker).append(FormatParser.HEX_CODE);
+        for (char digit : digits) {
+            out.append(marker).append(digit);
+        }
+    }
+
+    /**
+     * Length of the marker at {@code index} whatever follows it, or 0 if there is none.
+     */
+    private int signWidth(CharSequence text, int index, int length) {
+        if (index >= length) {
+            return 0;
+        }
+        char c = text.charAt(index);
+        return switch (this) {
+            case SECTION -> c == FormatParser.SECTION ? 1 : 0;
+            case ESCAPED -> c == '\\' && FormatParser.isEscapedSection(text, index, length) ? marker.length() : 0;
+            case AMPERSAND -> c == '&' ? 1 : 0;
+        };
+    }
+
+    /**
+     * Length of the marker at {@code index}, or 0 if there is none. An {@code &} only counts when
+     * a recognised code follows it, so ordinary ampersands survive a round trip.
+     */
+    private int markerWidth(CharSequence text, int index, int length) {
+        char c = text.charAt(index);
+        return switch (this) {
+            case SECTION -> c == FormatParser.SECTION ? 1 : 0;
+            case ESCAPED -> c == '\\' && FormatParser.isEscapedSection(text, index, length) ? marker.length() : 0;
+            case AMPERSAND -> c == '&' && index + 1 < length
+                    && Style.apply(Style.PLAIN, text.charAt(index + 1)) >= 0 ? 1 : 0;
+        };
+    }
+}
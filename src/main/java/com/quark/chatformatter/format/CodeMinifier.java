@@ -0,0 +1,297 @@
+package com.quark.chatformatter.format;
+
+import java.util.Arrays;
+
+/**
+ * Rewrites code text with as few codes as possible while rendering the same.
+ * <p>
+ * The text is cut into segments that need an exact style and segments of spaces and line breaks,
+ * which only need the right boldness (spaces) or nothing at all (line breaks). A shortest path
+ * over the styles each segment may be shown in then picks where codes go: codes before text that
+ * does not need them are dropped, and spaces take whichever style is cheapest between their
+ * neighbours. For spaces the candidates are the styles reachable from the previous segment with a
+ * minimal change, the style of the next segment and the written style, which covers the useful
+ * choices while keeping the search linear in the length of the text.
+ * <p>
+ * Underlined, struck-through and obfuscated spaces are treated as visible text. The result is
+ * re-parsed and checked before it is returned; if it would not render the same, or is not
+ * shorter, the input is returned unchanged.
+ */
+public final class CodeMinifier {
+    private static final int FREE = 0;
+    private static final int SPACE = 1;
+    private static final int EXACT = 2;
+
+    private static final int SPACE_SENSITIVE = Style.UNDERLINE | Style.STRIKETHROUGH | Style.OBFUSCATED;
+
+    private CodeMinifier() {
+    }
+
+    /**
+     * Minifies {@code source}, which uses {@code \\u00A7} escapes if {@code escaped} is set. The
+     * result uses the same form.
+     */
+    public static String minify(String source, boolean escaped) {
+        SpanList spans = FormatParser.parse(source, escaped);
+        Segments segments = Segments.of(spans);
+        int[] states = new Search(segments).run();
+
+        String marker = escaped ? FormatParser.ESCAPED_SECTION : String.valueOf(FormatParser.SECTION);
+        StringBuilder out = new StringBuilder(source.length());
+        int style = Style.PLAIN;
+        for (int i = 0; i < segments.count; i++) {
+            if (segments.kinds[i] != FREE) {
+                CodeWriter.appendTransition(out, style, states[i], marker);
+                style = states[i];
+            }
+            appendSource(out, source, spans, segments.starts[i], segments.ends[i]);
+        }
+        String minified = out.toString();
+        return minified.length() < source.length() && rendersSame(spans, FormatParser.parse(minified, escaped))
+                ? minified : source;
+    }
+
+    /**
+     * Appends the source text shown at {@code [start, end)}: the visible characters themselves,
+     * except for sealed spans, which are copied from the source whole.
+     */
+    private static void appendSource(StringBuilder out, String source, SpanList spans, int start, int end) {
+        int span = spans.spanAt(start);
+        while (start < end) {
+            int spanEnd = Math.min(spans.end(span), end);
+            if (spans.isSealed(span)) {
+                out.append(source, spans.sourceStart(span), spans.sourceEnd(span));
+            } else {
+                int sourceStart = spans.sourceStart(span) + start - spans.start(span);
+                out.append(source, sourceStart, sourceStart + spanEnd - start);
+            }
+            start = spanEnd;
+            span++;
+        }
+    }
+
+    private static boolean rendersSame(SpanList expected, SpanList actual) {
+        if (expected.length() != actual.length()) {
+            return false;
+        }
+        int a = 0;
+        int b = 0;
+        for (int i = 0; i < expected.length(); i++) {
+            char c = expected.charAt(i);
+            if (c != actual.charAt(i)) {
+                return false;
+            }
+            while (expected.end(a) <= i) {
+                a++;
+            }
+            while (actual.end(b) <= i) {
+                b++;
+            }
+            int want = expected.style(a);
+            int have = actual.style(b);
+            boolean same = switch (kind(c, want, expected.isSealed(a))) {
+                case FREE -> true;
+                case SPACE -> accepts(want & Style.BOLD, have);
+                default -> want == have;
+            };
+            if (!same) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int kind(char c, int style, boolean sealed) {
+        if (sealed) {
+            return EXACT;
+        }
+        if (c == '\n') {
+            return FREE;
+        }
+        return c == ' ' && (style & SPACE_SENSITIVE) == 0 ? SPACE : EXACT;
+    }
+
+    /**
+     * Whether a space in {@code style} looks like one needing boldness {@code bold}.
+     */
+    private static boolean accepts(int bold, int style) {
+        return (style & SPACE_SENSITIVE) == 0 && (style & Style.BOLD) == bold;
+    }
+
+    /**
+     * Maximal runs of visible text that share a kind and a requirement: the exact style, or the
+     * boldness of spaces.
+     */
+    private static final class Segments {
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int[] kinds = new int[16];
+        /** The exact style, the required boldness, or the written style of a free segment. */
+        int[] styles = new int[16];
+        int count;
+
+        static Segments of(SpanList spans) {
+            Segments segments = new Segments();
+            for (int span = 0; span < spans.size(); span++) {
+                int style = spans.style(span);
+                boolean sealed = spans.isSealed(span);
+                for (int i = spans.start(span); i < spans.end(span); i++) {
+                    int kind = kind(spans.charAt(i), style, sealed);
+                    segments.add(i, kind, kind == SPACE ? style & Style.BOLD : style);
+                }
+            }
+            return segments;
+        }
+
+        private void add(int index, int kind, int style) {
+            if (count > 0 && kinds[count - 1] == kind && ends[count - 1] == index
+                    && (kind == FREE || styles[count - 1] == style)) {
+                ends[count - 1] = index + 1;
+                return;
+            }
+            if (count == starts.length) {
+                int capacity = count << 1;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                kinds = Arrays.copyOf(kinds, capacity);
+                styles = Arrays.copyOf(styles, capacity);
+            }
+            starts[count] = index;
+            ends[count] = index + 1;
+            kinds[count] = kind;
+            styles[count] = style;
+            count++;
+        }
+    }
+
+    /**
+     * Shortest path over segment styles, counting codes. Each segment keeps a few candidate styles
+     * with their best cost and the candidate of the previous segment it came from.
+     */
+    private static final class Search {
+        private final Segments segments;
+        private final int[][] styles;
+        private final int[][] costs;
+        private final int[][] from;
+        /** Style of the next segment that needs an exact style, or -1. */
+        private final int[] nextExact;
+
+        Search(Segments segments) {
+            this.segments = segments;
+            this.styles = new int[segments.count][];
+            this.costs = new int[segments.count][];
+            this.from = new int[segments.count][];
+            this.nextExact = new int[segments.count];
+            int next = -1;
+            for (int i = segments.count - 1; i >= 0; i--) {
+                nextExact[i] = next;
+                if (segments.kinds[i] == EXACT) {
+                    next = segments.styles[i];
+                }
+            }
+        }
+
+        /**
+         * Returns the chosen style for every segment.
+         */
+        int[] run() {
+            int[] previousStyles = {Style.PLAIN};
+            int[] previousCosts = {0};
+            for (int i = 0; i < segments.count; i++) {
+                if (segments.kinds[i] == FREE) {
+                    // No codes are written before a line break, so every state carries over as is.
+                    styles[i] = previousStyles;
+                    costs[i] = previousCosts;
+                    from[i] = identity(previousStyles.length);
+                    continue;
+                }
+                int[] candidates = candidates(i);
+                int[] best = new int[candidates.length];
+                int[] origin = new int[candidates.length];
+                for (int c = 0; c < candidates.length; c++) {
+                    best[c] = Integer.MAX_VALUE;
+                    for (int p = 0; p < previousStyles.length; p++) {
+                        int cost = previousCosts[p] + CodeWriter.codeCount(previousStyles[p], candidates[c]);
+                        if (cost < best[c]) {
+                            best[c] = cost;
+                            origin[c] = p;
+                        }
+                    }
+                }
+                styles[i] = candidates;
+                costs[i] = best;
+                from[i] = origin;
+                previousStyles = candidates;
+                previousCosts = best;
+            }
+
+            int[] chosen = new int[segments.count];
+            if (segments.count == 0) {
+                return chosen;
+            }
+            int last = segments.count - 1;
+            int c = 0;
+            for (int k = 1; k < costs[last].length; k++) {
+                if (costs[last][k] < costs[last][c]) {
+                    c = k;
+                }
+            }
+            for (int i = last; i >= 0; i--) {
+                chosen[i] = styles[i][c];
+                c = from[i][c];
+            }
+            return chosen;
+        }
+
+        private int[] candidates(int i) {
+            int style = segments.styles[i];
+            if (segments.kinds[i] == EXACT) {
+                return new int[]{style};
+            }
+            int[] previous = i > 0 ? styles[i - 1] : new int[]{Style.PLAIN};
+            int[] candidates = new int[previous.length + 2];
+            int n = 0;
+            for (int state : previous) {
+                n = addDistinct(candidates, n, fit(state, style));
+            }
+            if (nextExact[i] >= 0) {
+                n = addDistinct(candidates, n, fit(nextExact[i], style));
+            }
+            n = addDistinct(candidates, n, fit(Style.PLAIN, style));
+            return n == candidates.length ? candidates : Arrays.copyOf(candidates, n);
+        }
+
+        /**
+         * The cheapest change of {@code state} a space needing boldness {@code bold} accepts.
+         */
+        private static int fit(int state, int bold) {
+            if (accepts(bold, state)) {
+                return state;
+            }
+            int formats = Style.formats(state) & ~Style.ITALIC;
+            if ((formats & ~bold) != 0) {
+                // A format has to go, which needs a reset; keep the colour if there is one.
+                return Style.withColorOf(bold, state);
+            }
+            return state | bold;
+        }
+
+        private static int[] identity(int n) {
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++) {
+                values[i] = i;
+            }
+            return values;
+        }
+
+        private static int addDistinct(int[] values, int n, int value) {
+            for (int i = 0; i < n; i++) {
+                if (values[i] == value) {
+                    return n;
+                }
+            }
+            values[n++] = value;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Emits the codes that switch from one style to another.
+ * <p>
+ * The codes are chosen to render the same whether a colour code keeps the active formats, as the
+ * preview does, or clears them, as the game client does: formats are always written after the
+ * colour, and repeated after a colour change. Hex colours are written {@code §x§R§R§G§G§B§B}.
+ */
+public final class CodeWriter {
+
+    private CodeWriter() {
+    }
+
+    /**
+     * Appends to {@code out} the codes that turn {@code from} into {@code to}, each introduced by
+     * {@code marker}.
+     */
+    public static void appendTransition(StringBuilder out, int from, int to, String marker) {
+        if (from == to) {
+            return;
+        }
+        int formats = Style.formats(to);
+        boolean reset = (Style.formats(from) & ~formats) != 0 || Style.hasColor(from) && !Style.hasColor(to);
+        if (reset) {
+            out.append(marker).append('r');
+            from = Style.PLAIN;
+        }
+        if (Style.hasColor(to) && colorChanges(from, to)) {
+            appendColor(out, to, marker);
+        } else {
+            formats &= ~Style.formats(from);
+        }
+        appendFormats(out, formats, marker);
+    }
+
+    /**
+     * Appends the code, or for a hex colour the seven codes, that set the colour of {@code style}.
+     */
+    public static void appendColor(StringBuilder out, int style, String marker) {
+        if (!Style.isHex(style)) {
+            out.append(marker).append(Style.colorCode(Style.color(style)));
+            return;
+        }
+        out.append(marker).append(FormatParser.HEX_CODE);
+        int rgb = Style.color(style);
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            out.append(marker).append(Character.forDigit(rgb >> shift & 0xF, 16));
+        }
+    }
+
+    /**
+     * Number of codes {@link #appendTransition} writes for the same styles.
+     */
+    public static int codeCount(int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        int formats = Style.formats(to);
+        int count = 0;
+        if ((Style.formats(from) & ~formats) != 0 || Style.hasColor(from) && !Style.hasColor(to)) {
+            count++;
+            from = Style.PLAIN;
+        }
+        if (Style.hasColor(to) && colorChanges(from, to)) {
+            count += Style.isHex(to) ? FormatParser.HEX_CODES : 1;
+        } else {
+            formats &= ~Style.formats(from);
+        }
+        return count + Integer.bitCount(formats);
+    }
+
+    private static boolean colorChanges(int from, int to) {
+        return ((from ^ to) & Style.COLOR_BITS) != 0;
+    }
+
+    static void appendFormats(StringBuilder out, int formats, String marker) {
+        while (formats != 0) {
+            int flag = Integer.lowestOneBit(formats);
+            out.append(marker).append(Style.formatCode(flag));
+            formats &= ~flag;
+        }
+    }
+}
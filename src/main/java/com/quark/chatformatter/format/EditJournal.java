@@ -0,0 +1,266 @@
+package com.quark.chatformatter.format;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Undo and redo history kept as the edits made to a text rather than copies of it, so its size
+ * follows the size of the edits, not the size of the document.
+ * <p>
+ * Edits recorded between {@link #begin()} and {@link #end()} form one step, such as all the edits
+ * of a formatting button. Other edits are typing: consecutive insertions, backspaces or deletes at
+ * the same spot within a short time are merged into one step. Before a step is replayed, all its
+ * edits are checked against the text; if the text no longer matches, the history is dropped and
+ * the text left alone instead of corrupting it.
+ */
+public final class EditJournal {
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAX_STEPS = 10_000;
+    private static final long MERGE_WINDOW_NANOS = 1_000_000_000L;
+
+    /**
+     * {@code removed} at {@code start} was replaced by {@code inserted}.
+     */
+    private record Delta(int start, String removed, String inserted) {
+        int size() {
+            return removed.length() + inserted.length();
+        }
+    }
+
+    private static final class Step {
+        final List<Delta> deltas = new ArrayList<>(2);
+        final boolean typing;
+        /** Set once replayed, after which nothing typed merges into the step. */
+        boolean sealed;
+        long time;
+        int size;
+
+        Step(boolean typing) {
+            this.typing = typing;
+        }
+
+        void add(Delta delta) {
+            deltas.add(delta);
+            size += delta.size();
+        }
+
+        void replaceLast(Delta delta) {
+            size -= deltas.get(deltas.size() - 1).size();
+            deltas.set(deltas.size() - 1, delta);
+            size += delta.size();
+        }
+    }
+
+    private final long capacity;
+    private final Deque<Step> undo = new ArrayDeque<>();
+    private final Deque<Step> redo = new ArrayDeque<>();
+    private long size;
+
+    private Step open;
+    private int depth;
+
+    public EditJournal() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity characters of edit text to keep before the oldest steps are dropped
+     */
+    public EditJournal(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Starts a step; edits recorded until the matching {@link #end()} are undone together.
+     * Steps may nest, in which case the outermost one counts.
+     */
+    public void begin() {
+        if (depth++ == 0) {
+            open = new Step(false);
+        }
+    }
+
+    public void end() {
+        if (depth == 0) {
+            throw new IllegalStateException("No open step");
+        }
+        if (--depth == 0) {
+            if (!open.deltas.isEmpty()) {
+                push(open);
+            }
+            open = null;
+        }
+    }
+
+    /**
+     * Records {@code edit}, which replaced {@code removed}.
+     */
+    public void record(TextEdit edit, String removed) {
+        if (edit.isEmpty()) {
+            return;
+        }
+        Delta delta = new Delta(edit.start(), removed, edit.text());
+        for (Step step : redo) {
+            size -= step.size;
+        }
+        redo.clear();
+        if (open != null) {
+            open.add(delta);
+            return;
+        }
+        long now = System.nanoTime();
+        Step last = undo.peekFirst();
+        if (last != null && last.typing && !last.sealed && now - last.time < MERGE_WINDOW_NANOS) {
+            Delta merged = merge(last.deltas.get(last.deltas.size() - 1), delta);
+            if (merged != null) {
+                size -= last.size;
+                last.replaceLast(merged);
+                last.time = now;
+                size += last.size;
+                trim();
+                return;
+            }
+        }
+        Step step = new Step(true);
+        step.time = now;
+        step.add(delta);
+        push(step);
+    }
+
+    /**
+     * Combines two consecutive typing edits, or returns null if they are not a continuation of
+     * each other. A line break ends a typing step.
+     */
+    private static Delta merge(Delta previous, Delta next) {
+        if (next.inserted.indexOf('\n') >= 0) {
+            return null;
+        }
+        boolean previousInsert = previous.removed.isEmpty();
+        boolean nextInsert = next.removed.isEmpty();
+        if (nextInsert && !next.inserted.isEmpty() && previousInsert
+                && next.start == previous.start + previous.inserted.length()) {
+            return new Delta(previous.start, "", previous.inserted + next.inserted);
+        }
+        if (!previousInsert && previous.inserted.isEmpty() && !nextInsert && next.inserted.isEmpty()) {
+            if (next.start + next.removed.length() == previous.start) {
+                return new Delta(next.start, next.removed + previous.removed, "");
+            }
+            if (next.start == previous.start) {
+                return new Delta(previous.start, previous.removed + next.removed, "");
+            }
+        }
+        return null;
+    }
+
+    private void push(Step step) {
+        undo.addFirst(step);
+        size += step.size;
+        trim();
+    }
+
+    private void trim() {
+        while ((size > capacity || undo.size() + redo.size() > MAX_STEPS) && undo.size() > 1) {
+            size -= undo.removeLast().size;
+        }
+    }
+
+    public boolean canUndo() {
+        return !undo.isEmpty();
+    }
+
+    public boolean canRedo() {
+        return !redo.isEmpty();
+    }
+
+    /**
+     * Reverts the latest step through {@code apply}, which must change {@code text} accordingly.
+     * Returns the last edit applied, or null if there was nothing to undo or the text no longer
+     * matched the history, which is then cleared without applying anything.
+     */
+    public TextEdit undo(Supplier<CharSequence> text, Consumer<TextEdit> apply) {
+        return replay(undo, redo, true, text, apply);
+    }
+
+    /**
+     * Reapplies the latest undone step, like {@link #undo}.
+     */
+    public TextEdit redo(Supplier<CharSequence> text, Consumer<TextEdit> apply) {
+        return replay(redo, undo, false, text, apply);
+    }
+
+    private TextEdit replay(Deque<Step> from, Deque<Step> to, boolean backwards,
+                            Supplier<CharSequence> text, Consumer<TextEdit> apply) {
+        if (depth > 0) {
+            throw new IllegalStateException("Step still open");
+        }
+        Step step = from.pollFirst();
+        if (step == null) {
+            return null;
+        }
+        // Each edit is checked against the text as the edits before it will leave it.
+        CharSequence current = text.get();
+        int length = current.length();
+        int count = step.deltas.size();
+        List<TextEdit> edits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Delta delta = step.deltas.get(backwards ? count - 1 - i : i);
+            String expected = backwards ? delta.inserted : delta.removed;
+            String replacement = backwards ? delta.removed : delta.inserted;
+            if (!matches(current, length, edits, delta.start, expected)) {
+                clear();
+                return null;
+            }
+            edits.add(new TextEdit(delta.start, delta.start + expected.length(), replacement));
+            length += replacement.length() - expected.length();
+        }
+        edits.forEach(apply);
+        step.sealed = true;
+        to.addFirst(step);
+        return edits.get(count - 1);
+    }
+
+    /**
+     * Whether {@code expected} is at {@code start} of {@code text} changed by {@code edits}, which
+     * leave it {@code length} long.
+     */
+    private static boolean matches(CharSequence text, int length, List<TextEdit> edits, int start, String expected) {
+        if (start + expected.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (charAt(text, edits, start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Character {@code index} of {@code text} changed by {@code edits}, found by following the
+     * index back through them.
+     */
+    private static char charAt(CharSequence text, List<TextEdit> edits, int index) {
+        for (int i = edits.size() - 1; i >= 0; i--) {
+            TextEdit edit = edits.get(i);
+            if (index >= edit.start()) {
+                int inserted = edit.text().length();
+                if (index < edit.start() + inserted) {
+                    return edit.text().charAt(index - edit.start());
+                }
+                index += edit.end() - edit.start() - inserted;
+            }
+        }
+        return text.charAt(index);
+    }
+
+    public void clear() {
+        undo.clear();
+        redo.clear();
+        size = 0;
+    }
+}
@@ -0,0 +1,139 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Single-pass parser for legacy formatting codes.
+ * <p>
+ * Understands {@code §} codes, hex colours written {@code §x§R§R§G§G§B§B} and, when enabled, the
+ * six-character {@code \\u00A7} escape used in server MOTDs. Unknown codes are kept as visible
+ * text, exactly as the preview shows them; so is an {@code x} code not followed by six digit codes.
+ */
+public final class FormatParser {
+    public static final char SECTION = '§';
+    public static final String ESCAPED_SECTION = "\\u00A7";
+    /** Code that starts a hex colour; six codes holding one hex digit each follow it. */
+    public static final char HEX_CODE = 'x';
+    /** Number of codes in a hex colour, the {@code x} included. */
+    public static final int HEX_CODES = 7;
+
+    private FormatParser() {
+    }
+
+    public static SpanList parse(CharSequence source) {
+        return parse(source, true);
+    }
+
+    public static SpanList parse(CharSequence source, boolean decodeEscapes) {
+        SpanList spans = new SpanList(source.length(), 8);
+        parse(source, 0, source.length(), Style.PLAIN, decodeEscapes, spans);
+        return spans;
+    }
+
+    /**
+     * Parses {@code source[from, to)} starting in {@code style} and appends the result to
+     * {@code out}. Returns the style in effect at {@code to}.
+     */
+    public static int parse(CharSequence source, int from, int to, int style, boolean decodeEscapes, SpanList out) {
+        parse(source, from, to, to, style, decodeEscapes, out);
+        return out.endStyle();
+    }
+
+    /**
+     * Parses every construct that starts before {@code stop} in a text ending at {@code end}.
+     * Returns the index the parser stopped at, which is never inside a code or escape; the style
+     * in effect there is left in {@link SpanList#endStyle()}.
+     */
+    static int parse(CharSequence source, int from, int stop, int end, int style, boolean decodeEscapes,
+                     SpanList out) {
+        int index = from;
+        while (index < stop) {
+            char c = source.charAt(index);
+            int width = 1;
+            if (decodeEscapes && c == '\\' && isEscapedSection(source, index, end)) {
+                c = SECTION;
+                width = ESCAPED_SECTION.length();
+            }
+            int next = index + width;
+            if (c != SECTION || next >= end) {
+                out.append(c, index, next, style);
+                index = next;
+                continue;
+            }
+
+            char code = source.charAt(next);
+            int codeWidth = 1;
+            if (decodeEscapes && code == '\\' && isEscapedSection(source, next, end)) {
+                code = SECTION;
+                codeWidth = ESCAPED_SECTION.length();
+            }
+            if (code == HEX_CODE) {
+                long hex = hexColor(source, next + 1, end, decodeEscapes);
+                if (hex >= 0) {
+                    style = Style.withRgb(style, (int) hex);
+                    index = (int) (hex >>> 32);
+                    continue;
+                }
+            }
+            int applied = Style.apply(style, code);
+            if (applied >= 0) {
+                style = applied;
+            } else {
+                out.appendPair(SECTION, code, index, next + codeWidth, style);
+            }
+            index = next + codeWidth;
+        }
+        out.endStyle(style);
+        return index;
+    }
+
+    /**
+     * Reads the six digit codes of a hex colour starting at {@code index}, right after its
+     * {@code x}. Returns the index after them in the high half and the {@code 0xRRGGBB} value in
+     * the low half, or -1 if they are not all there.
+     */
+    static long hexColor(CharSequence source, int index, int end, boolean decodeEscapes) {
+        int rgb = 0;
+        for (int i = 1; i < HEX_CODES; i++) {
+            int width = markerWidth(source, index, end, decodeEscapes);
+            if (width == 0 || index + width >= end) {
+                return -1;
+            }
+            int digit = Style.hexDigit(source.charAt(index + width));
+            if (digit < 0) {
+                return -1;
+            }
+            rgb = rgb << 4 | digit;
+            index += width + 1;
+        }
+        return (long) index << 32 | rgb;
+    }
+
+    /**
+     * Length of the {@code §} or, if enabled, escape at {@code index}, or 0 if there is none.
+     */
+    static int markerWidth(CharSequence source, int index, int end, boolean decodeEscapes) {
+        if (index >= end) {
+            return 0;
+        }
+        char c = source.charAt(index);
+        if (c == SECTION) {
+            return 1;
+        }
+        return decodeEscapes && c == '\\' && isEscapedSection(source, index, end) ? ESCAPED_SECTION.length() : 0;
+    }
+
+    /**
+     * Whether {@code source} holds the {@code \\u00A7} escape at {@code index}.
+     */
+    public static boolean isEscapedSection(CharSequence source, int index, int to) {
+        if (index + 6 > to) {
+            return false;
+        }
+        char a = source.charAt(index + 4);
+        return source.charAt(index) == '\\'
+                && source.charAt(index + 1) == 'u'
+                && source.charAt(index + 2) == '0'
+                && source.charAt(index + 3) == '0'
+                && (a == 'A' || a == 'a')
+                && source.charAt(index + 5) == '7';
+    }
+}
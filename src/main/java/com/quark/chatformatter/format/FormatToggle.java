@@ -0,0 +1,189 @@
+package com.quark.chatformatter.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Applies a colour or format code to a selection of code text.
+ * <p>
+ * Only the codes right at the selection boundaries are inspected: the run of codes just before and
+ * at the start of the selection, and the {@code §r} codes around its end. A format already set in
+ * that run is not added again.
+ * The result is a pair of small edits, so the cost does not depend on the size of the document or
+ * of the selection.
+ */
+public final class FormatToggle {
+
+    /**
+     * Edits to apply in order (from the end of the text towards the start), and the selection that
+     * covers the formatted text afterwards.
+     */
+    public record Result(List<TextEdit> edits, int selectionStart, int selectionEnd) {
+    }
+
+    private FormatToggle() {
+    }
+
+    /**
+     * Applies {@code code} to {@code text[selectionStart, selectionEnd)}. With an empty selection the
+     * code is inserted at the caret, so it applies to everything after it. {@code escaped} selects
+     * the {@code \\u00A7} form used in MOTDs.
+     */
+    public static Result toggle(CharSequence text, int selectionStart, int selectionEnd, char code, boolean escaped) {
+        String prefix = escaped ? FormatParser.ESCAPED_SECTION : String.valueOf(FormatParser.SECTION);
+        return toggle(text, selectionStart, selectionEnd, prefix + code, Style.colorIndex(code) >= 0, code == 'r',
+                prefix);
+    }
+
+    /**
+     * Applies the hex colour {@code rgb} to {@code text[selectionStart, selectionEnd)} like a colour
+     * code, written {@code §x§R§R§G§G§B§B}.
+     */
+    public static Result toggleHex(CharSequence text, int selectionStart, int selectionEnd, int rgb,
+                                   boolean escaped) {
+        String prefix = escaped ? FormatParser.ESCAPED_SECTION : String.valueOf(FormatParser.SECTION);
+        StringBuilder code = new StringBuilder();
+        CodeWriter.appendColor(code, Style.withRgb(Style.PLAIN, rgb), prefix);
+        return toggle(text, selectionStart, selectionEnd, code.toString(), true, false, prefix);
+    }
+
+    private static Result toggle(CharSequence text, int selectionStart, int selectionEnd, String startCode,
+                                 boolean isColor, boolean isReset, String prefix) {
+        int width = prefix.length() + 1;
+        String reset = prefix + 'r';
+
+        if (selectionStart == selectionEnd) {
+            int caret = selectionStart + startCode.length();
+            return new Result(List.of(new TextEdit(selectionStart, selectionStart, startCode)), caret, caret);
+        }
+
+        // Leading codes, including those right before the selection, which apply only to it.
+        int start = selectionStart;
+        if (!isReset) {
+            int length;
+            while ((length = codeEndingAt(text, start, prefix)) > 0) {
+                start -= length;
+            }
+        }
+        int prefixEnd = start;
+        int length;
+        while ((length = codeLength(text, prefixEnd, prefix)) > 0 && prefixEnd + length <= selectionEnd) {
+            prefixEnd += length;
+        }
+        if (isReset) {
+            while (start >= width && codeAt(text, start - width, prefix) == 'r') {
+                start -= width;
+            }
+        }
+
+        // Keep what the leading codes set after their last reset, minus what the new code replaces.
+        boolean hadReset = false;
+        StringBuilder colors = new StringBuilder();
+        StringBuilder formats = new StringBuilder();
+        for (int i = start; i < prefixEnd; i += length) {
+            length = codeLength(text, i, prefix);
+            String existing = text.subSequence(i, i + length).toString();
+            if (existing.equals(reset)) {
+                hadReset = true;
+                colors.setLength(0);
+                formats.setLength(0);
+            } else if (existing.equals(startCode)) {
+                continue;
+            } else if (length > width || Style.colorIndex(existing.charAt(width - 1)) >= 0) {
+                colors.append(existing);
+            } else if (formats.indexOf(existing) < 0) {
+                formats.append(existing);
+            }
+        }
+        String lead = hadReset ? reset : "";
+        String newPrefix;
+        if (isReset) {
+            newPrefix = reset;
+        } else if (isColor) {
+            newPrefix = lead + startCode + formats;
+        } else {
+            newPrefix = lead + colors + startCode + formats;
+        }
+
+        // Trailing resets: drop those ending the selection or starting the rest, then add one.
+        int end = selectionEnd;
+        while (end - width >= prefixEnd && codeAt(text, end - width, prefix) == 'r') {
+            end -= width;
+        }
+        int after = selectionEnd;
+        while (after + width <= text.length() && codeAt(text, after, prefix) == 'r') {
+            after += width;
+        }
+
+        List<TextEdit> edits = new ArrayList<>(2);
+        int selectionEndAfter = start + newPrefix.length() + (end - prefixEnd);
+        if (end == prefixEnd) {
+            addEdit(edits, TextEdit.minimal(text, start, after, newPrefix + reset));
+        } else {
+            addEdit(edits, TextEdit.minimal(text, end, after, reset));
+            addEdit(edits, TextEdit.minimal(text, start, prefixEnd, newPrefix));
+        }
+        return new Result(edits, start, selectionEndAfter);
+    }
+
+    /**
+     * Length of the known code or hex colour starting at {@code index}, or 0 if there is none.
+     */
+    private static int codeLength(CharSequence text, int index, String prefix) {
+        int width = prefix.length() + 1;
+        if (isHexColor(text, index, prefix)) {
+            return FormatParser.HEX_CODES * width;
+        }
+        return codeAt(text, index, prefix) != 0 ? width : 0;
+    }
+
+    /**
+     * Length of the known code or hex colour ending at {@code end}, or 0 if there is none.
+     */
+    private static int codeEndingAt(CharSequence text, int end, String prefix) {
+        int width = prefix.length() + 1;
+        if (isHexColor(text, end - FormatParser.HEX_CODES * width, prefix)) {
+            return FormatParser.HEX_CODES * width;
+        }
+        return codeAt(text, end - width, prefix) != 0 ? width : 0;
+    }
+
+    private static boolean isHexColor(CharSequence text, int index, String prefix) {
+        if (index < 0 || !startsWith(text, index, prefix)) {
+            return false;
+        }
+        int digits = index + prefix.length() + 1;
+        return digits < text.length() && text.charAt(digits - 1) == FormatParser.HEX_CODE
+                && FormatParser.hexColor(text, digits, text.length(), prefix.length() > 1) >= 0;
+    }
+
+    /**
+     * Returns the code character of a known code starting at {@code index}, or 0 if there is none.
+     */
+    static char codeAt(CharSequence text, int index, String prefix) {
+        int codeIndex = index + prefix.length();
+        if (index < 0 || codeIndex >= text.length() || !startsWith(text, index, prefix)) {
+            return 0;
+        }
+        char code = text.charAt(codeIndex);
+        return Style.apply(Style.PLAIN, code) >= 0 ? code : 0;
+    }
+
+    private static boolean startsWith(CharSequence text, int index, String prefix) {
+        if (index + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(index + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addEdit(List<TextEdit> edits, TextEdit edit) {
+        if (!edit.isEmpty()) {
+            edits.add(edit);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Text with a gap of free space at the last edit, so a run of nearby edits moves only the
+ * characters between them rather than the rest of the text.
+ */
+final class GapBuffer implements CharSequence {
+    private static final int MIN_GAP = 64;
+
+    private char[] buffer = new char[MIN_GAP];
+    private int gapStart;
+    private int gapEnd = MIN_GAP;
+
+    @Override
+    public int length() {
+        return buffer.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer[index < gapStart ? index : index + gapEnd - gapStart];
+    }
+
+    /**
+     * Replaces {@code [start, end)} with {@code text}.
+     */
+    void replace(int start, int end, CharSequence text) {
+        moveGap(end);
+        gapStart = start;
+        int length = text.length();
+        if (gapEnd - gapStart < length) {
+            int tail = buffer.length - gapEnd;
+            int capacity = Math.max(buffer.length << 1, gapStart + length + tail + MIN_GAP);
+            char[] grown = new char[capacity];
+            System.arraycopy(buffer, 0, grown, 0, gapStart);
+            System.arraycopy(buffer, gapEnd, grown, capacity - tail, tail);
+            buffer = grown;
+            gapEnd = capacity - tail;
+        }
+        for (int i = 0; i < length; i++) {
+            buffer[gapStart++] = text.charAt(i);
+        }
+    }
+
+    private void moveGap(int index) {
+        if (index < gapStart) {
+            int count = gapStart - index;
+            System.arraycopy(buffer, index, buffer, gapEnd - count, count);
+            gapStart = index;
+            gapEnd -= count;
+        } else if (index > gapStart) {
+            int count = index - gapStart;
+            System.arraycopy(buffer, gapEnd, buffer, gapStart, count);
+            gapStart = index;
+            gapEnd += count;
+        }
+    }
+
+    @Override
+    public String subSequence(int start, int end) {
+        if (end <= gapStart) {
+            return new String(buffer, start, end - start);
+        }
+        if (start >= gapStart) {
+            return new String(buffer, start + gapEnd - gapStart, end - start);
+        }
+        char[] chars = new char[end - start];
+        getChars(start, end, chars);
+        return new String(chars);
+    }
+
+    private void getChars(int start, int end, char[] dst) {
+        int before = Math.max(0, Math.min(end, gapStart) - start);
+        System.arraycopy(buffer, start, dst, 0, before);
+        System.arraycopy(buffer, Math.max(start, gapStart) + gapEnd - gapStart, dst, before, end - start - before);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length());
+    }
+}
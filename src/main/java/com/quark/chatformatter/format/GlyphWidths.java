@@ -0,0 +1,92 @@
+package com.quark.chatformatter.format;
+
+import java.util.Arrays;
+
+/**
+ * Pixel advances of the Minecraft default font, including the one-pixel gap after each glyph.
+ * <p>
+ * Advances are looked up in two precomputed tables, one for regular and one for bold text, where
+ * bold is one pixel wider. The tables cover Latin-1; other characters get the default advance.
+ */
+public final class GlyphWidths {
+    public static final int DEFAULT_ADVANCE = 6;
+    public static final int SPACE_ADVANCE = 4;
+
+    private static final int TABLE_SIZE = 256;
+    private static final byte[] REGULAR = new byte[TABLE_SIZE];
+    private static final byte[] BOLD = new byte[TABLE_SIZE];
+
+    static {
+        Arrays.fill(REGULAR, (byte) DEFAULT_ADVANCE);
+        set(SPACE_ADVANCE, " ");
+        set(2, "!',.:;i|\u00A1");
+        set(3, "`l");
+        set(4, "\"I[]t");
+        set(5, "()*<>fk{}");
+        set(7, "@~");
+        for (int c = 0; c < 0x20; c++) {
+            REGULAR[c] = 0;
+        }
+        REGULAR[0x7F] = 0;
+        for (int c = 0; c < TABLE_SIZE; c++) {
+            BOLD[c] = (byte) (REGULAR[c] == 0 ? 0 : REGULAR[c] + 1);
+        }
+    }
+
+    private GlyphWidths() {
+    }
+
+    private static void set(int advance, String chars) {
+        for (int i = 0; i < chars.length(); i++) {
+            REGULAR[chars.charAt(i)] = (byte) advance;
+        }
+    }
+
+    public static int advance(char c, boolean bold) {
+        if (c < TABLE_SIZE) {
+            return bold ? BOLD[c] : REGULAR[c];
+        }
+        return bold ? DEFAULT_ADVANCE + 1 : DEFAULT_ADVANCE;
+    }
+
+    public static int advance(char c, int style) {
+        return advance(c, Style.has(style, Style.BOLD));
+    }
+
+    /**
+     * Width of each line of {@code spans} in pixels.
+     */
+    public static int[] lineWidths(SpanList spans) {
+        int[] widths = new int[4];
+        int line = 0;
+        for (int span = 0; span < spans.size(); span++) {
+            byte[] table = Style.has(spans.style(span), Style.BOLD) ? BOLD : REGULAR;
+            int width = widths[line];
+            for (int i = spans.start(span), end = spans.end(span); i < end; i++) {
+                char c = spans.charAt(i);
+                if (c == '\n') {
+                    widths[line] = width;
+                    if (++line == widths.length) {
+                        widths = Arrays.copyOf(widths, line << 1);
+                    }
+                    width = 0;
+                } else {
+                    width += c < TABLE_SIZE ? table[c] : table == BOLD ? DEFAULT_ADVANCE + 1 : DEFAULT_ADVANCE;
+                }
+            }
+            widths[line] = width;
+        }
+        return Arrays.copyOf(widths, line + 1);
+    }
+
+    /**
+     * Width in pixels of the widest line of {@code spans}.
+     */
+    public static int width(SpanList spans) {
+        int max = 0;
+        for (int width : lineWidths(spans)) {
+            max = Math.max(max, width);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,126 @@
+package com.quark.chatformatter.format;
+
+import java.util.List;
+
+/**
+ * Colours a selection of code text along a gradient of RGB stops, each character taking its point
+ * on the gradient as a hex colour, or the legacy colour nearest to it.
+ * <p>
+ * The selection is rewritten in one pass: existing colour codes in it are dropped, formats are
+ * kept, and a colour code is written only where the colour changes, so characters that land on
+ * the same colour share one code. The style coming into the selection is found by parsing the
+ * text before it when the gradient is applied, so nothing is kept parsed in between.
+ */
+public final class Gradient {
+    /** Red through yellow, green, aqua and blue to magenta. */
+    public static final int[] RAINBOW = {0xFF0000, 0xFFFF00, 0x00FF00, 0x00FFFF, 0x0000FF, 0xFF00FF};
+
+    private static final String MARKER = String.valueOf(FormatParser.SECTION);
+
+    private Gradient() {
+    }
+
+    /**
+     * Returns the single edit that colours {@code [selectionStart, selectionEnd)} of {@code text}
+     * from the first to the last of {@code stops}, given as {@code 0xRRGGBB}, and the selection
+     * covering the rewritten range. The text is canonical code text. With
+     * {@code hex} set the colours are written as hex codes, otherwise as legacy codes. Text after
+     * the selection keeps the style it had.
+     */
+    public static FormatToggle.Result apply(String text, int selectionStart, int selectionEnd, int[] stops,
+                                            boolean hex) {
+        if (stops.length == 0) {
+            throw new IllegalArgumentException("No gradient stops");
+        }
+        int length = text.length();
+        // Stops outside any code, so a code the selection starts inside is rewritten whole.
+        SpanList head = new SpanList(selectionStart, 2);
+        int from = FormatParser.parse(text, 0, selectionStart, length, Style.PLAIN, false, head);
+        int incoming = head.endStyle();
+        SpanList spans = new SpanList(Math.max(0, selectionEnd - from), 8);
+        int to = FormatParser.parse(text, from, Math.max(from, selectionEnd), length, incoming, false, spans);
+        int outgoing = spans.endStyle();
+
+        int count = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            if (spans.isSealed(i)) {
+                count++;
+                continue;
+            }
+            int style = spans.style(i);
+            for (int j = spans.start(i); j < spans.end(i); j++) {
+                if (takesColor(spans.charAt(j), style)) {
+                    count++;
+                }
+            }
+        }
+
+        StringBuilder out = new StringBuilder(to - from + 16);
+        int style = incoming;
+        int index = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int base = spans.style(i);
+            if (spans.isSealed(i)) {
+                int target = withColor(base, rgbAt(index++, count, stops), hex);
+                CodeWriter.appendTransition(out, style, target, MARKER);
+                style = target;
+                out.append(text, spans.sourceStart(i), spans.sourceEnd(i));
+                continue;
+            }
+            for (int j = spans.start(i); j < spans.end(i); j++) {
+                char c = spans.charAt(j);
+                int target;
+                if (takesColor(c, base)) {
+                    target = withColor(base, rgbAt(index++, count, stops), hex);
+                } else {
+                    // Blank characters show no colour, so they keep the current one.
+                    target = Style.withColorOf(Style.formats(base), style);
+                }
+                CodeWriter.appendTransition(out, style, target, MARKER);
+                style = target;
+                out.append(c);
+            }
+        }
+        if (to < length) {
+            CodeWriter.appendTransition(out, style, outgoing, MARKER);
+        }
+
+        String replacement = out.toString();
+        TextEdit edit = TextEdit.minimal(text, from, to, replacement);
+        return new FormatToggle.Result(edit.isEmpty() ? List.of() : List.of(edit), from, from + replacement.length());
+    }
+
+    /**
+     * Whether the colour of {@code c} can be seen: spaces and line breaks show it only through an
+     * underline or strikethrough.
+     */
+    private static boolean takesColor(char c, int style) {
+        return c != ' ' && c != '\n' || (style & (Style.UNDERLINE | Style.STRIKETHROUGH)) != 0;
+    }
+
+    private static int withColor(int style, int rgb, boolean hex) {
+        return hex ? Style.withRgb(style, rgb) : Style.withColor(style, Style.nearestColor(rgb));
+    }
+
+    /**
+     * Colour of the {@code index}th of {@code count} coloured characters.
+     */
+    static int rgbAt(int index, int count, int[] stops) {
+        if (stops.length == 1 || count <= 1) {
+            return stops[0];
+        }
+        double position = (double) index * (stops.length - 1) / (count - 1);
+        int segment = Math.min((int) position, stops.length - 2);
+        double t = position - segment;
+        int a = stops[segment];
+        int b = stops[segment + 1];
+        int r = mix(a >> 16 & 0xFF, b >> 16 & 0xFF, t);
+        int g = mix(a >> 8 & 0xFF, b >> 8 & 0xFF, t);
+        int bl = mix(a & 0xFF, b & 0xFF, t);
+        return r << 16 | g << 8 | bl;
+    }
+
+    private static int mix(int a, int b, double t) {
+        return (int) Math.round(a + (b - a) * t);
+    }
+}
@@ -0,0 +1,351 @@
+package com.quark.chatformatter.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks code text against the length limits of where it is going, kept current edit by edit.
+ * <p>
+ * Lines are parsed and measured through a {@link ParagraphDocument}, so an edit measures again
+ * only the lines whose text or incoming style it changed, and the totals are adjusted by the lines
+ * it removed and added. The lines wider than the profile allows are kept in a list updated the same
+ * way. Finding where each violation starts walks the measured lines and reparses the offending
+ * ones, which happens only while a limit is exceeded; the report is kept until the next change.
+ */
+public final class LengthValidator {
+    /** Most violations a report lists; the rest are only counted. */
+    public static final int MAX_VIOLATIONS = 16;
+
+    private static final int ESCAPE_EXTRA = FormatParser.ESCAPED_SECTION.length() - 1;
+    private static final int LINE_BREAK_EXTRA = LineBreaks.LITERAL.length() - 1;
+
+    /**
+     * Limits of one destination, each 0 for none. Lengths count UTF-16 characters: {@code length}
+     * of the {@code §} text, {@code escapedLength} with every {@code §} written as {@code \\u00A7}
+     * and every line break as {@code \\n}, as in server.properties, and {@code visibleLength} of
+     * the shown text. Line width is in pixels of the default font.
+     */
+    public record Profile(String name, int maxLength, int maxEscapedLength, int maxVisibleLength, int maxLines,
+                          int maxLineWidth) {
+        /** A chat message or command typed in game. */
+        public static final Profile CHAT = new Profile("Chat", 256, 0, 0, 0, 0);
+        /** A server list entry. */
+        public static final Profile MOTD =
+                new Profile("MOTD", 0, 0, 0, LineCentering.MOTD_LINES, LineCentering.MOTD_WIDTH);
+        public static final Profile SIGN = new Profile("Sign", 0, 0, 0, 4, 90);
+        public static final Profile BOOK_PAGE = new Profile("Book page", 0, 0, 256, 14, 114);
+
+        public static final List<Profile> PRESETS = List.of(CHAT, MOTD, SIGN, BOOK_PAGE);
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * A limit exceeded, with the range of the shown text past it.
+     */
+    public record Violation(String message, int start, int end) {
+    }
+
+    /**
+     * Lengths of the text and the violations of the profile, at most {@link #MAX_VIOLATIONS} of
+     * {@code violationCount}.
+     */
+    public record Report(int length, int escapedLength, int visibleLength, int lines, List<Violation> violations,
+                         int violationCount) {
+        public boolean isValid() {
+            return violationCount == 0;
+        }
+
+        /**
+         * The violation messages on one line, or the empty string if there are none.
+         */
+        public String summary() {
+            StringBuilder summary = new StringBuilder();
+            for (Violation violation : violations) {
+                if (!summary.isEmpty()) {
+                    summary.append(", ");
+                }
+                summary.append(violation.message());
+            }
+            if (violationCount > violations.size()) {
+                summary.append(" and ").append(violationCount - violations.size()).append(" more");
+            }
+            return summary.toString();
+        }
+    }
+
+    /**
+     * Shown length and pixel width of one line.
+     */
+    private record Line(int visibleLength, int width) {
+    }
+
+    private final ParagraphDocument<Line> lines = new ParagraphDocument<>(LengthValidator::measure);
+    private Profile profile;
+    private int sections;
+    /** Shown characters of all lines, line breaks not included. */
+    private int visibleText;
+    /** Indices of the lines wider than the profile allows, in order. */
+    private int[] wideLines = new int[4];
+    private int wideCount;
+    /** The report of the current text and profile, made when first asked for. */
+    private Report report;
+
+    public LengthValidator(Profile profile) {
+        this.profile = profile;
+        reset("");
+    }
+
+    public Profile profile() {
+        return profile;
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+        report = null;
+        wideCount = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            if (isWide(lines.paragraph(i))) {
+                addWideLine(i);
+            }
+        }
+    }
+
+    /**
+     * Measures {@code text}, canonical code text, from scratch.
+     */
+    public void reset(String text) {
+        sections = count(text, 0, text.length());
+        account(lines.reset(text, false));
+    }
+
+    /**
+     * Measures again what {@code edit}, which turned the previous text into {@code text} by
+     * replacing {@code removed}, changed. {@code text} may be a view of the edited text, which must
+     * then not change before the next update.
+     */
+    public void update(CharSequence text, TextEdit edit, CharSequence removed) {
+        sections += count(edit.text(), 0, edit.text().length()) - count(removed, 0, removed.length());
+        account(lines.edit(text, edit.start(), edit.end(), edit.start() + edit.text().length()));
+    }
+
+    private void account(ParagraphDocument.Change<Line> change) {
+        report = null;
+        for (Line line : change.removed()) {
+            visibleText -= line.visibleLength();
+        }
+        for (Line line : change.inserted()) {
+            visibleText += line.visibleLength();
+        }
+
+        // Drop the removed lines from the wide ones, shift those after them, then add the inserted.
+        int first = change.start();
+        int removedEnd = first + change.removed().size();
+        int shift = change.inserted().size() - change.removed().size();
+        int from = wideIndex(first);
+        int to = wideIndex(removedEnd);
+        System.arraycopy(wideLines, to, wideLines, from, wideCount - to);
+        wideCount -= to - from;
+        for (int i = from; i < wideCount; i++) {
+            wideLines[i] += shift;
+        }
+        List<Line> inserted = change.inserted();
+        for (int i = 0; i < inserted.size(); i++) {
+            if (isWide(inserted.get(i))) {
+                addWideLine(first + i);
+            }
+        }
+    }
+
+    /**
+     * Position in {@code wideLines} of the first wide line at or after line {@code line}.
+     */
+    private int wideIndex(int line) {
+        int index = Arrays.binarySearch(wideLines, 0, wideCount, line);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private void addWideLine(int line) {
+        int index = wideIndex(line);
+        if (wideCount == wideLines.length) {
+            wideLines = Arrays.copyOf(wideLines, wideCount << 1);
+        }
+        System.arraycopy(wideLines, index, wideLines, index + 1, wideCount - index);
+        wideLines[index] = line;
+        wideCount++;
+    }
+
+    public int length() {
+        return lines.source().length();
+    }
+
+    public int escapedLength() {
+        return length() + ESCAPE_EXTRA * sections + LINE_BREAK_EXTRA * (lines.size() - 1);
+    }
+
+    public int visibleLength() {
+        return visibleText + lines.size() - 1;
+    }
+
+    public int lineCount() {
+        return lines.size();
+    }
+
+    /**
+     * Checks the text against the profile.
+     */
+    public Report report() {
+        if (report == null) {
+            report = check();
+        }
+        return report;
+    }
+
+    private Report check() {
+        int length = length();
+        int escapedLength = escapedLength();
+        int visibleLength = visibleLength();
+        int lineCount = lines.size();
+        List<Violation> violations = new ArrayList<>();
+        int count = 0;
+
+        int maxLength = profile.maxLength();
+        if (maxLength > 0 && length > maxLength) {
+            count++;
+            violations.add(new Violation(length + "/" + maxLength + " chars", visibleOffset(maxLength), visibleLength));
+        }
+        int maxEscaped = profile.maxEscapedLength();
+        if (maxEscaped > 0 && escapedLength > maxEscaped) {
+            count++;
+            violations.add(new Violation(escapedLength + "/" + maxEscaped + " escaped chars",
+                    visibleOffset(escapedToSource(maxEscaped)), visibleLength));
+        }
+        int maxVisible = profile.maxVisibleLength();
+        if (maxVisible > 0 && visibleLength > maxVisible) {
+            count++;
+            violations.add(new Violation(visibleLength + "/" + maxVisible + " shown chars", maxVisible, visibleLength));
+        }
+        int maxLines = profile.maxLines();
+        if (maxLines > 0 && lineCount > maxLines) {
+            count++;
+            violations.add(new Violation(lineCount + "/" + maxLines + " lines", lineStart(maxLines), visibleLength));
+        }
+        if (wideCount > 0) {
+            count += wideCount;
+            int maxWidth = profile.maxLineWidth();
+            int offset = 0;
+            int previous = 0;
+            for (int w = 0; w < wideCount && violations.size() < MAX_VIOLATIONS; w++) {
+                int i = wideLines[w];
+                offset += shownLength(previous, i);
+                previous = i;
+                Line line = lines.paragraph(i);
+                violations.add(new Violation("line " + (i + 1) + ": " + line.width() + "/" + maxWidth + " px",
+                        offset + overflowColumn(i, maxWidth), offset + line.visibleLength()));
+            }
+        }
+        return new Report(length, escapedLength, visibleLength, lineCount, List.copyOf(violations), count);
+    }
+
+    private boolean isWide(Line line) {
+        return profile.maxLineWidth() > 0 && line.width() > profile.maxLineWidth();
+    }
+
+    private static Line measure(SpanList spans) {
+        return new Line(spans.length(), GlyphWidths.lineWidths(spans)[0]);
+    }
+
+    private SpanList parseLine(int line) {
+        int start = lines.start(line);
+        int end = lines.end(line);
+        SpanList spans = new SpanList(end - start, 4);
+        FormatParser.parse(lines.source(), start, end, lines.incomingStyle(line), false, spans);
+        return spans;
+    }
+
+    /**
+     * Offset in the shown text where line {@code line} starts.
+     */
+    private int lineStart(int line) {
+        return shownLength(0, line);
+    }
+
+    /**
+     * Shown characters of lines {@code [from, to)}, their line breaks included.
+     */
+    private int shownLength(int from, int to) {
+        int offset = 0;
+        for (int i = from; i < to; i++) {
+            offset += lines.paragraph(i).visibleLength() + 1;
+        }
+        return offset;
+    }
+
+    /**
+     * Offset in the shown text of source offset {@code sourceOffset}: of the first character shown
+     * after it if it is inside a code, and of the whole pair if it is inside a shown pair.
+     */
+    private int visibleOffset(int sourceOffset) {
+        int line = lines.paragraphAt(sourceOffset);
+        SpanList spans = parseLine(line);
+        int column = spans.length();
+        for (int i = 0; i < spans.size(); i++) {
+            if (sourceOffset < spans.sourceEnd(i)) {
+                column = sourceOffset <= spans.sourceStart(i) || spans.isSealed(i)
+                        ? spans.start(i)
+                        : spans.start(i) + sourceOffset - spans.sourceStart(i);
+                break;
+            }
+        }
+        return lineStart(line) + column;
+    }
+
+    /**
+     * Column of line {@code line} at which it grows wider than {@code maxWidth}.
+     */
+    private int overflowColumn(int line, int maxWidth) {
+        SpanList spans = parseLine(line);
+        int width = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int style = spans.style(i);
+            for (int j = spans.start(i); j < spans.end(i); j++) {
+                width += GlyphWidths.advance(spans.charAt(j), style);
+                if (width > maxWidth) {
+                    return j;
+                }
+            }
+        }
+        return spans.length();
+    }
+
+    /**
+     * Source offset of the first character that does not fit in {@code maxEscaped} escaped
+     * characters.
+     */
+    private int escapedToSource(int maxEscaped) {
+        CharSequence source = lines.source();
+        int escaped = 0;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            escaped += c == FormatParser.SECTION ? ESCAPE_EXTRA + 1 : c == '\n' ? LINE_BREAK_EXTRA + 1 : 1;
+            if (escaped > maxEscaped) {
+                return i;
+            }
+        }
+        return source.length();
+    }
+
+    private static int count(CharSequence text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == FormatParser.SECTION) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,26 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Conversion between real line breaks and the literal {@code \n} sequence that chat and MOTD
+ * configs use inside a single-line value.
+ */
+public final class LineBreaks {
+    public static final String LITERAL = "\\n";
+
+    private LineBreaks() {
+    }
+
+    /**
+     * Replaces every line break with a literal {@code \n}, as copied to the clipboard.
+     */
+    public static String join(String text) {
+        return text.indexOf('\n') < 0 ? text : text.replace("\n", LITERAL);
+    }
+
+    /**
+     * Replaces every literal {@code \n} with a line break.
+     */
+    public static String split(String text) {
+        return text.contains(LITERAL) ? text.replace(LITERAL, "\n") : text;
+    }
+}
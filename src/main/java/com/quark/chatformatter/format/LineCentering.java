@@ -0,0 +1,119 @@
+package com.quark.chatformatter.format;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Centres each line of code text within a pixel width by padding it with leading spaces, the way
+ * server MOTDs are centred in the server list.
+ */
+public final class LineCentering {
+    /** Width of a server-list MOTD line in pixels. */
+    public static final int MOTD_WIDTH = 270;
+    /** Number of lines the server list shows of a MOTD. */
+    public static final int MOTD_LINES = 2;
+    /** Width of the default chat box in pixels. */
+    public static final int CHAT_WIDTH = 320;
+
+    private LineCentering() {
+    }
+
+    /**
+     * Returns the edits, last to first, that centre every line of the canonical {@code text}
+     * within {@code width} pixels. Spaces a line already starts with are replaced, so centring
+     * twice changes nothing; codes among them are kept. Blank lines are left alone.
+     */
+    public static List<TextEdit> center(String text, int width) {
+        List<TextEdit> edits = new ArrayList<>();
+        int length = text.length();
+        int style = Style.PLAIN;
+        int index = 0;
+        while (true) {
+            int lineStart = index;
+            int lineStyle = style;
+            StringBuilder codes = new StringBuilder();
+            int leadEnd = -1;
+            int contentWidth = 0;
+            while (index < length) {
+                char c = text.charAt(index);
+                if (c == FormatParser.SECTION && index + 1 < length) {
+                    char code = text.charAt(index + 1);
+                    int codeEnd = index + 2;
+                    int applied = -1;
+                    if (code == FormatParser.HEX_CODE) {
+                        long hex = FormatParser.hexColor(text, codeEnd, length, false);
+                        if (hex >= 0) {
+                            applied = Style.withRgb(style, (int) hex);
+                            codeEnd = (int) (hex >>> 32);
+                        }
+                    }
+                    if (applied < 0) {
+                        applied = Style.apply(style, code);
+                    }
+                    if (applied >= 0) {
+                        if (leadEnd < 0) {
+                            codes.append(text, index, codeEnd);
+                        }
+                        style = applied;
+                        index = codeEnd;
+                        continue;
+                    }
+                }
+                if (c == '\n') {
+                    break;
+                }
+                if (leadEnd < 0) {
+                    if (c == ' ') {
+                        index++;
+                        continue;
+                    }
+                    leadEnd = index;
+                }
+                contentWidth += GlyphWidths.advance(c, style);
+                // An unknown pair is shown as is, and its second character cannot start a code.
+                if (c == FormatParser.SECTION && index + 1 < length && text.charAt(index + 1) != '\n') {
+                    contentWidth += GlyphWidths.advance(text.charAt(index + 1), style);
+                    index++;
+                }
+                index++;
+            }
+            if (leadEnd >= 0) {
+                int space = GlyphWidths.advance(' ', lineStyle);
+                int spaces = Math.max(0, Math.round((width - contentWidth) / 2f / space));
+                TextEdit edit = TextEdit.minimal(text, lineStart, leadEnd, " ".repeat(spaces) + codes);
+                if (!edit.isEmpty()) {
+                    edits.add(0, edit);
+                }
+            }
+            if (index >= length) {
+                return edits;
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Describes the lines of {@code spans} that do not fit {@code width} pixels, and the lines
+     * past {@code maxLines}, or returns null if everything fits.
+     */
+    public static String overflow(SpanList spans, int width, int maxLines) {
+        int[] widths = GlyphWidths.lineWidths(spans);
+        StringBuilder warning = new StringBuilder();
+        for (int line = 0; line < widths.length; line++) {
+            if (widths[line] > width) {
+                if (!warning.isEmpty()) {
+                    warning.append(", ");
+                }
+                warning.append("line ").append(line + 1).append(": ")
+                        .append(widths[line]).append('/').append(width).append(" px");
+            }
+        }
+        if (widths.length > maxLines) {
+            if (!warning.isEmpty()) {
+                warning.append(", ");
+            }
+            warning.append(widths.length).append('/').append(maxLines).append(" lines");
+        }
+        return warning.isEmpty() ? null : warning.toString();
+    }
+}
@@ -0,0 +1,328 @@
+package com.quark.chatformatter.format;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Maps offsets between {@code §} code text and the text it shows, both ways in logarithmic time.
+ * <p>
+ * Only recognised codes change the mapping: each hides two source characters, and a hex colour is
+ * seven of them. Whether an {@code §x} pair, or an uppercase digit after it, is a code depends on
+ * the pairs around it, so edits rescan a hex colour's length to either side. The codes are kept
+ * in a treap in text order, each node holding the number of shown characters since the previous
+ * code, with subtree sums of those gaps. An edit replaces just the codes near it and shifts
+ * everything after it by adjusting a single gap, so keeping the index current costs time in the
+ * size of the edit rather than of the document.
+ */
+public final class OffsetIndex {
+    private static final int NIL = 0;
+    private static final int CODE = 2;
+    private static final int HEX_LENGTH = FormatParser.HEX_CODES * CODE;
+
+    private int[] left = new int[16];
+    private int[] right = new int[16];
+    private int[] priority = new int[16];
+    private int[] gap = new int[16];
+    private int[] size = new int[16];
+    /** Subtree sum of gaps. */
+    private int[] gaps = new int[16];
+    private int[] free = new int[16];
+    private int freeCount;
+    private int nodeCount = 1;
+    private final Random random = new Random();
+
+    private int root = NIL;
+    private int length;
+
+    private int splitLeft;
+    private int splitRight;
+
+    /**
+     * Length of the source text.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Number of recognised codes.
+     */
+    public int codeCount() {
+        return size[root];
+    }
+
+    /**
+     * Length of the shown text.
+     */
+    public int visibleLength() {
+        return length - CODE * size[root];
+    }
+
+    /**
+     * Indexes {@code text} from scratch.
+     */
+    public void reset(CharSequence text) {
+        root = NIL;
+        nodeCount = 1;
+        freeCount = 0;
+        length = text.length();
+        root = build(text, 0, length, 0);
+    }
+
+    /**
+     * Updates the index after {@code edit} turned the previous text into {@code text}.
+     */
+    public void update(CharSequence text, TextEdit edit) {
+        int delta = edit.delta();
+        int newEnd = edit.end() + delta;
+        // Rescan from a point where the code pairing cannot depend on the edit, up to a point after
+        // it where the old and new pairing agree again.
+        int from = Math.max(0, edit.start() - (HEX_LENGTH - 1));
+        while (from > 0 && text.charAt(from - 1) == FormatParser.SECTION) {
+            from--;
+        }
+        from = hexStart(text, from);
+        int to = scanEnd(text, from, newEnd);
+
+        split(root, from, 0);
+        int head = splitLeft;
+        int rest = splitRight;
+        int headEnd = sourceLength(head);
+        split(rest, to - delta, headEnd);
+        int removed = splitLeft;
+        int tail = splitRight;
+        int tailBase = headEnd + sourceLength(removed);
+        release(removed);
+
+        head = merge(head, build(text, from, to, from - headEnd));
+        if (tail != NIL) {
+            // The first code after the rescanned range moved with the edit; its gap absorbs that.
+            int end = sourceLength(head);
+            splitFirst(tail);
+            int first = splitLeft;
+            int oldStart = tailBase + gap[first];
+            gap[first] = oldStart + delta - end;
+            pull(first);
+            tail = merge(first, splitRight);
+        }
+        root = merge(head, tail);
+        length = text.length();
+    }
+
+    /**
+     * Shown offset of a source offset. An offset inside a code maps to where the code is shown.
+     */
+    public int toVisible(int sourceOffset) {
+        int node = root;
+        int base = 0;
+        int codes = 0;
+        int lastStart = -CODE;
+        while (node != NIL) {
+            int start = base + sourceLength(left[node]) + gap[node];
+            if (start < sourceOffset) {
+                codes += size[left[node]] + 1;
+                lastStart = start;
+                base = start + CODE;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        if (sourceOffset < lastStart + CODE) {
+            return lastStart - CODE * (codes - 1);
+        }
+        return sourceOffset - CODE * codes;
+    }
+
+    /**
+     * Source offset of a shown offset. Codes shown exactly at {@code visibleOffset} end up before
+     * the result if {@code afterCodes} is set, and after it otherwise.
+     */
+    public int toSource(int visibleOffset, boolean afterCodes) {
+        int node = root;
+        int base = 0;
+        int codes = 0;
+        while (node != NIL) {
+            int start = base + gaps[left[node]] + gap[node];
+            if (start < visibleOffset || afterCodes && start == visibleOffset) {
+                codes += size[left[node]] + 1;
+                base = start;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return visibleOffset + CODE * codes;
+    }
+
+    /**
+     * Index at or after {@code newEnd} where the pairing of codes scanned from {@code from} is
+     * settled and matches the old text, far enough past it that no hex colour starting before the
+     * settled point reaches beyond.
+     */
+    private static int scanEnd(CharSequence text, int from, int newEnd) {
+        int length = text.length();
+        int index = from;
+        int settled = -1;
+        while (index < length) {
+            if (settled < 0 && index > newEnd && text.charAt(index - 1) != FormatParser.SECTION) {
+                settled = index;
+            }
+            if (settled >= 0 && index - settled >= HEX_LENGTH - 1) {
+                return index;
+            }
+            index += text.charAt(index) == FormatParser.SECTION && index + 1 < length ? 2 : 1;
+        }
+        return length;
+    }
+
+    /**
+     * The start of the hex colour the pair boundary {@code from} lies inside of, or {@code from}.
+     */
+    private static int hexStart(CharSequence text, int from) {
+        for (int start = from - CODE; start >= 0 && start > from - HEX_LENGTH; start -= CODE) {
+            if (text.charAt(start) == FormatParser.SECTION && text.charAt(start + 1) == FormatParser.HEX_CODE
+                    && FormatParser.hexColor(text, start + CODE, text.length(), false) >= 0) {
+                // Only a pair start if an even run of signs, paired among themselves, precedes it.
+                int run = 0;
+                while (start - run > 0 && text.charAt(start - run - 1) == FormatParser.SECTION) {
+                    run++;
+                }
+                return run % 2 == 0 ? start : from;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Builds a treap of the recognised codes in {@code text[from, to)}, whose first gap starts
+     * {@code lead} characters before {@code from}.
+     */
+    private int build(CharSequence text, int from, int to, int lead) {
+        int tree = NIL;
+        int previousEnd = from - lead;
+        int index = from;
+        // Digit codes of the current hex colour still to come.
+        int hexDigits = 0;
+        while (index < to) {
+            if (text.charAt(index) != FormatParser.SECTION || index + 1 >= text.length()) {
+                index++;
+                continue;
+            }
+            char code = text.charAt(index + 1);
+            boolean recognised;
+            if (hexDigits > 0) {
+                recognised = true;
+                hexDigits--;
+            } else if (code == FormatParser.HEX_CODE
+                    && FormatParser.hexColor(text, index + CODE, text.length(), false) >= 0) {
+                recognised = true;
+                hexDigits = FormatParser.HEX_CODES - 1;
+            } else {
+                recognised = Style.apply(Style.PLAIN, code) >= 0;
+            }
+            if (recognised) {
+                tree = merge(tree, node(index - previousEnd));
+                previousEnd = index + CODE;
+            }
+            index += 2;
+        }
+        return tree;
+    }
+
+    private int sourceLength(int node) {
+        return gaps[node] + CODE * size[node];
+    }
+
+    private void split(int node, int sourceOffset, int base) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        int start = base + sourceLength(left[node]) + gap[node];
+        if (start < sourceOffset) {
+            split(right[node], sourceOffset, start + CODE);
+            right[node] = splitLeft;
+            pull(node);
+            splitLeft = node;
+        } else {
+            split(left[node], sourceOffset, base);
+            left[node] = splitRight;
+            pull(node);
+            splitRight = node;
+        }
+    }
+
+    private void splitFirst(int node) {
+        if (left[node] == NIL) {
+            splitLeft = node;
+            splitRight = right[node];
+            right[node] = NIL;
+            pull(node);
+            return;
+        }
+        splitFirst(left[node]);
+        left[node] = splitRight;
+        pull(node);
+        splitRight = node;
+    }
+
+    private int merge(int a, int b) {
+        if (a == NIL) {
+            return b;
+        }
+        if (b == NIL) {
+            return a;
+        }
+        if (priority[a] > priority[b]) {
+            right[a] = merge(right[a], b);
+            pull(a);
+            return a;
+        }
+        left[b] = merge(a, left[b]);
+        pull(b);
+        return b;
+    }
+
+    private void pull(int node) {
+        size[node] = size[left[node]] + size[right[node]] + 1;
+        gaps[node] = gaps[left[node]] + gaps[right[node]] + gap[node];
+    }
+
+    private int node(int nodeGap) {
+        int node;
+        if (freeCount > 0) {
+            node = free[--freeCount];
+        } else {
+            if (nodeCount == left.length) {
+                int capacity = nodeCount << 1;
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+                priority = Arrays.copyOf(priority, capacity);
+                gap = Arrays.copyOf(gap, capacity);
+                size = Arrays.copyOf(size, capacity);
+                gaps = Arrays.copyOf(gaps, capacity);
+            }
+            node = nodeCount++;
+        }
+        left[node] = NIL;
+        right[node] = NIL;
+        priority[node] = random.nextInt();
+        gap[node] = nodeGap;
+        pull(node);
+        return node;
+    }
+
+    private void release(int node) {
+        if (node == NIL) {
+            return;
+        }
+        release(left[node]);
+        release(right[node]);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount << 1);
+        }
+        free[freeCount++] = node;
+    }
+}
@@ -0,0 +1,296 @@
+package com.quark.chatformatter.format;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A code string kept as paragraphs, the lines between its line breaks, each parsed on its own
+ * starting in the style the previous one ends in, and updated edit by edit.
+ * <p>
+ * An edit reparses the paragraphs it touches, then the ones after it only until one starts in the
+ * style it started in before. Each parsed paragraph is turned into a value by a {@link Renderer}
+ * and cached under its text and incoming style, so paragraphs that come back, such as after an
+ * undo, a reset or a paste of repeated lines, are neither parsed nor rendered again. The source
+ * may be a view of a text edited in place, as long as every edit of it is passed on before the
+ * next one is made. Not safe to share between threads.
+ *
+ * @param <P> what {@link Renderer} makes of a paragraph
+ */
+public final class ParagraphDocument<P> {
+    public static final int DEFAULT_CACHE_CAPACITY = 8192;
+
+    /**
+     * Turns the spans of one paragraph, which contain no line break, into a value. The spans must
+     * not be kept.
+     */
+    public interface Renderer<P> {
+        P render(SpanList spans);
+    }
+
+    /**
+     * Paragraphs changed: {@code removed} starting at paragraph {@code start} were replaced by
+     * {@code inserted}.
+     */
+    public record Change<P>(int start, List<P> removed, List<P> inserted) {
+    }
+
+    private record Key(String source, int incoming) {
+    }
+
+    private record Parsed<P>(P paragraph, int outgoing) {
+    }
+
+    private final Renderer<P> renderer;
+    private final Map<Key, Parsed<P>> cache;
+    private CharSequence source = "";
+    /** Length of the source as of the latest change, which a source edited in place no longer has. */
+    private int length;
+    private boolean decodeEscapes;
+
+    /** Per paragraph: source offset it starts at, and the styles it starts and ends in. */
+    private int[] offsets = new int[16];
+    private int[] incoming = new int[16];
+    private int[] outgoing = new int[16];
+    private final List<P> paragraphs = new ArrayList<>();
+
+    /** Paragraphs parsed by the latest change and how many of them came from the cache. */
+    private int parsed;
+    private int cached;
+
+    public ParagraphDocument(Renderer<P> renderer) {
+        this(renderer, DEFAULT_CACHE_CAPACITY);
+    }
+
+    /**
+     * @param capacity paragraphs to keep in the cache, least recently used first out
+     */
+    public ParagraphDocument(Renderer<P> renderer, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.renderer = renderer;
+        this.cache = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Parsed<P>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public CharSequence source() {
+        return source;
+    }
+
+    public boolean decodesEscapes() {
+        return decodeEscapes;
+    }
+
+    public int size() {
+        return paragraphs.size();
+    }
+
+    public P paragraph(int index) {
+        return paragraphs.get(index);
+    }
+
+    /**
+     * Source offset paragraph {@code index} starts at.
+     */
+    public int start(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Source offset paragraph {@code index} ends at, before its line break.
+     */
+    public int end(int index) {
+        return lineEnd(index);
+    }
+
+    /**
+     * Style paragraph {@code index} starts in.
+     */
+    public int incomingStyle(int index) {
+        return incoming[index];
+    }
+
+    /**
+     * Style in effect at the end of the text.
+     */
+    public int endStyle() {
+        return paragraphs.isEmpty() ? Style.PLAIN : outgoing[paragraphs.size() - 1];
+    }
+
+    /**
+     * Number of paragraphs the latest change parsed, cache hits included.
+     */
+    public int parsedCount() {
+        return parsed;
+    }
+
+    /**
+     * Number of paragraphs of the latest change that were found in the cache.
+     */
+    public int cachedCount() {
+        return cached;
+    }
+
+    /**
+     * Splits and parses {@code newSource} from scratch, replacing all paragraphs. Paragraphs still
+     * in the cache are reused unless the escape mode changed.
+     */
+    public Change<P> reset(CharSequence newSource, boolean decodeEscapes) {
+        if (decodeEscapes != this.decodeEscapes) {
+            cache.clear();
+            this.decodeEscapes = decodeEscapes;
+        }
+        return replace(newSource, 0, paragraphs.size() - 1, 0, newSource.length(), newSource.length() - length);
+    }
+
+    /**
+     * Applies the edit that turned {@code oldSource} into {@code newSource}. Falls back to a full
+     * reset if {@code oldSource} is not the text this document currently holds. Returns
+     * {@code null} if the text did not change.
+     */
+    public Change<P> update(String oldSource, String newSource) {
+        if (oldSource != source && !oldSource.contentEquals(source)) {
+            return reset(newSource, decodeEscapes);
+        }
+        int oldLength = oldSource.length();
+        int newLength = newSource.length();
+        int max = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < max && oldSource.charAt(prefix) == newSource.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && oldSource.charAt(oldLength - 1 - suffix) == newSource.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return null;
+        }
+        return edit(newSource, prefix, oldLength - suffix, newLength - suffix);
+    }
+
+    /**
+     * Applies an edit that replaced {@code source[start, oldEnd)} with
+     * {@code newSource[start, newEnd)}.
+     */
+    public Change<P> edit(CharSequence newSource, int start, int oldEnd, int newEnd) {
+        if (paragraphs.isEmpty()) {
+            return reset(newSource, decodeEscapes);
+        }
+        int delta = newEnd - oldEnd;
+        int first = paragraphAt(start);
+        int last = paragraphAt(oldEnd);
+        return replace(newSource, first, last, offsets[first], lineEnd(last) + delta, delta);
+    }
+
+    /**
+     * Replaces paragraphs {@code [first, last]} with the lines of {@code newSource[from, to)},
+     * then reparses the paragraphs after them until one starts in the same style as before.
+     */
+    private Change<P> replace(CharSequence newSource, int first, int last, int from, int to, int delta) {
+        parsed = 0;
+        cached = 0;
+        int style = first > 0 ? outgoing[first - 1] : Style.PLAIN;
+        int n = 0;
+        int[] newOffsets = new int[4];
+        int[] newIncoming = new int[4];
+        int[] newOutgoing = new int[4];
+        List<P> inserted = new ArrayList<>();
+
+        int lineStart = from;
+        int next = last + 1;
+        while (true) {
+            int lineEnd;
+            if (lineStart <= to) {
+                lineEnd = lineStart;
+                while (lineEnd < to && newSource.charAt(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+            } else if (next < paragraphs.size() && incoming[next] != style) {
+                // The style carried into the next old paragraph changed, so it parses differently.
+                lineStart = offsets[next] + delta;
+                lineEnd = lineEnd(next) + delta;
+                next++;
+            } else {
+                break;
+            }
+            if (n == newOffsets.length) {
+                newOffsets = Arrays.copyOf(newOffsets, n << 1);
+                newIncoming = Arrays.copyOf(newIncoming, n << 1);
+                newOutgoing = Arrays.copyOf(newOutgoing, n << 1);
+            }
+            Parsed<P> paragraph = parse(newSource, lineStart, lineEnd, style);
+            newOffsets[n] = lineStart;
+            newIncoming[n] = style;
+            newOutgoing[n] = paragraph.outgoing();
+            inserted.add(paragraph.paragraph());
+            n++;
+            style = paragraph.outgoing();
+            lineStart = lineEnd + 1;
+        }
+
+        int count = paragraphs.size();
+        int shift = n - (next - first);
+        if (count + shift > offsets.length) {
+            int capacity = Math.max(count + shift, offsets.length << 1);
+            offsets = Arrays.copyOf(offsets, capacity);
+            incoming = Arrays.copyOf(incoming, capacity);
+            outgoing = Arrays.copyOf(outgoing, capacity);
+        }
+        System.arraycopy(offsets, next, offsets, next + shift, count - next);
+        System.arraycopy(incoming, next, incoming, next + shift, count - next);
+        System.arraycopy(outgoing, next, outgoing, next + shift, count - next);
+        System.arraycopy(newOffsets, 0, offsets, first, n);
+        System.arraycopy(newIncoming, 0, incoming, first, n);
+        System.arraycopy(newOutgoing, 0, outgoing, first, n);
+        for (int i = first + n; i < count + shift; i++) {
+            offsets[i] += delta;
+        }
+        List<P> window = paragraphs.subList(first, next);
+        List<P> removed = new ArrayList<>(window);
+        window.clear();
+        paragraphs.addAll(first, inserted);
+        source = newSource;
+        length = newSource.length();
+        return new Change<>(first, removed, inserted);
+    }
+
+    private Parsed<P> parse(CharSequence text, int from, int to, int style) {
+        parsed++;
+        Key key = new Key(text.subSequence(from, to).toString(), style);
+        Parsed<P> paragraph = cache.get(key);
+        if (paragraph != null) {
+            cached++;
+            return paragraph;
+        }
+        SpanList spans = new SpanList(to - from, 4);
+        int outgoing = FormatParser.parse(key.source(), 0, to - from, style, decodeEscapes, spans);
+        paragraph = new Parsed<>(renderer.render(spans), outgoing);
+        cache.put(key, paragraph);
+        return paragraph;
+    }
+
+    /**
+     * Index of the paragraph containing source offset {@code offset}, counting the line break
+     * after a paragraph as part of it.
+     */
+    public int paragraphAt(int offset) {
+        int index = Arrays.binarySearch(offsets, 0, paragraphs.size(), offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Source offset of the end of paragraph {@code index}, before its line break.
+     */
+    private int lineEnd(int index) {
+        return index + 1 < paragraphs.size() ? offsets[index + 1] - 1 : length;
+    }
+}
@@ -0,0 +1,167 @@
+package com.quark.chatformatter.format;
+
+/**
+ * A code string kept together with its parsed spans and updated edit by edit.
+ * <p>
+ * An edit is reparsed from the nearest point before it where the parser state is known, and only
+ * until the new parse agrees with the old one again, so the work done depends on the size of the
+ * edit rather than the size of the document.
+ */
+public final class ParsedDocument {
+    private String source = "";
+    private boolean decodeEscapes;
+    private final SpanList spans = new SpanList();
+
+    /**
+     * Visible text that changed: {@code [start, end)} in the previous visible text is replaced by
+     * {@code inserted}, whose offsets are relative to {@code start}.
+     */
+    public record Change(int start, int end, SpanList inserted) {
+    }
+
+    public ParsedDocument() {
+    }
+
+    public ParsedDocument(boolean decodeEscapes) {
+        this.decodeEscapes = decodeEscapes;
+    }
+
+    public String source() {
+        return source;
+    }
+
+    public boolean decodesEscapes() {
+        return decodeEscapes;
+    }
+
+    public SpanList spans() {
+        return spans;
+    }
+
+    /**
+     * Parses {@code newSource} from scratch, replacing all visible text.
+     */
+    public Change reset(String newSource, boolean decodeEscapes) {
+        int oldLength = spans.length();
+        this.source = newSource;
+        this.decodeEscapes = decodeEscapes;
+        spans.clear();
+        FormatParser.parse(newSource, 0, newSource.length(), Style.PLAIN, decodeEscapes, spans);
+        return new Change(0, oldLength, spans);
+    }
+
+    /**
+     * Applies the edit that turned {@code oldSource} into {@code newSource}. Falls back to a full
+     * reset if {@code oldSource} is not the text this document currently holds. Returns
+     * {@code null} if nothing visible changed.
+     */
+    public Change update(String oldSource, String newSource) {
+        if (oldSource != source && !source.equals(oldSource)) {
+            return reset(newSource, decodeEscapes);
+        }
+        int oldLength = oldSource.length();
+        int newLength = newSource.length();
+        int max = Math.min(oldLength, newLength);
+        int prefix = 0;
+        while (prefix < max && oldSource.charAt(prefix) == newSource.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < max - prefix
+                && oldSource.charAt(oldLength - 1 - suffix) == newSource.charAt(newLength - 1 - suffix)) {
+            suffix++;
+        }
+        if (prefix == oldLength && prefix == newLength) {
+            return null;
+        }
+        return edit(newSource, prefix, oldLength - suffix, newLength - suffix);
+    }
+
+    /**
+     * Applies an edit that replaced {@code source[start, oldEnd)} with
+     * {@code newSource[start, newEnd)}.
+     */
+    public Change edit(String newSource, int start, int oldEnd, int newEnd) {
+        int delta = newSource.length() - source.length();
+
+        // Restart where the old parse was in a known state and nothing before depends on the edit.
+        int target = start - lookBehind();
+        int from = 0;
+        int visibleFrom = 0;
+        int style = Style.PLAIN;
+        int span = target > 0 ? spans.spanAtSource(target) : -1;
+        if (span >= 0) {
+            style = spans.style(span);
+            if (target >= spans.sourceEnd(span)) {
+                from = spans.sourceEnd(span);
+                visibleFrom = spans.end(span);
+            } else if (spans.isSealed(span)) {
+                from = spans.sourceStart(span);
+                visibleFrom = spans.start(span);
+            } else {
+                from = target;
+                visibleFrom = spans.start(span) + from - spans.sourceStart(span);
+            }
+        }
+
+        SpanList fresh = new SpanList(newEnd - from + 16, 4);
+        int end = newSource.length();
+        int index = FormatParser.parse(newSource, from, newEnd, end, style, decodeEscapes, fresh);
+
+        // Continue until the old parse, shifted by the edit, reaches the same state at a clean point.
+        int oldSpan = Math.max(span, 0);
+        int visibleTo;
+        while (true) {
+            int oldIndex = index - delta;
+            if (index >= end) {
+                visibleTo = spans.length();
+                spans.endStyle(fresh.endStyle());
+                break;
+            }
+            while (oldSpan < spans.size() && spans.sourceEnd(oldSpan) < oldIndex) {
+                oldSpan++;
+            }
+            visibleTo = visibleOffsetAt(oldSpan, oldIndex, fresh.endStyle());
+            if (visibleTo >= 0) {
+                break;
+            }
+            index = FormatParser.parse(newSource, index, index + 1, end, fresh.endStyle(), decodeEscapes, fresh);
+        }
+
+        spans.splice(from, index - delta, visibleFrom, visibleTo, fresh, delta);
+        source = newSource;
+        return new Change(visibleFrom, visibleTo, fresh);
+    }
+
+    /**
+     * How far back from an offset the construct covering it can start. The longest construct is a
+     * hex colour: seven codes, each a marker and a character.
+     */
+    private int lookBehind() {
+        return (decodeEscapes ? FormatParser.ESCAPED_SECTION.length() + 1 : 2) * FormatParser.HEX_CODES - 1;
+    }
+
+    /**
+     * Visible offset of the old source offset if the old parse was at a clean point there in
+     * {@code style}, otherwise -1. {@code span} is the first span not ending before the offset.
+     */
+    private int visibleOffsetAt(int span, int sourceOffset, int style) {
+        if (sourceOffset == 0) {
+            return style == Style.PLAIN ? 0 : -1;
+        }
+        if (span >= spans.size()) {
+            return -1;
+        }
+        int sourceStart = spans.sourceStart(span);
+        if (sourceOffset < sourceStart || spans.style(span) != style) {
+            return -1;
+        }
+        if (sourceOffset == spans.sourceEnd(span)) {
+            return spans.end(span);
+        }
+        if (sourceOffset == sourceStart || !spans.isSealed(span)) {
+            return spans.start(span) + sourceOffset - sourceStart;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,289 @@
+package com.quark.chatformatter.format;
+
+import java.util.Arrays;
+
+/**
+ * Visible text of a parsed code string together with its styled spans.
+ * <p>
+ * Spans are contiguous in the visible text and each one remembers the source range it was
+ * produced from. A span never crosses a formatting code. Constructs that are wider in the source
+ * than on screen, or that must not be split (a decoded {@code \\u00A7} escape, an unknown code
+ * shown as text), are kept in sealed spans of their own, so every other span maps source and
+ * visible offsets one to one.
+ */
+public final class SpanList {
+    private char[] text;
+    private int length;
+
+    private int[] starts;
+    private int[] sourceStarts;
+    private int[] sourceEnds;
+    private int[] styles;
+    private boolean[] sealed;
+    private int count;
+
+    private int endStyle;
+
+    public SpanList() {
+        this(64, 8);
+    }
+
+    public SpanList(int textCapacity, int spanCapacity) {
+        text = new char[Math.max(textCapacity, 16)];
+        int capacity = Math.max(spanCapacity, 4);
+        starts = new int[capacity];
+        sourceStarts = new int[capacity];
+        sourceEnds = new int[capacity];
+        styles = new int[capacity];
+        sealed = new boolean[capacity];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Length of the visible text.
+     */
+    public int length() {
+        return length;
+    }
+
+    public char charAt(int index) {
+        return text[index];
+    }
+
+    public String text() {
+        return new String(text, 0, length);
+    }
+
+    public String text(int start, int end) {
+        return new String(text, start, end - start);
+    }
+
+    public void getChars(int start, int end, char[] dst, int dstBegin) {
+        System.arraycopy(text, start, dst, dstBegin, end - start);
+    }
+
+    public int start(int span) {
+        return starts[span];
+    }
+
+    public int end(int span) {
+        return span + 1 < count ? starts[span + 1] : length;
+    }
+
+    public int sourceStart(int span) {
+        return sourceStarts[span];
+    }
+
+    public int sourceEnd(int span) {
+        return sourceEnds[span];
+    }
+
+    public int style(int span) {
+        return styles[span];
+    }
+
+    public boolean isSealed(int span) {
+        return sealed[span];
+    }
+
+    /**
+     * Style in effect after the last parsed character, including any trailing codes.
+     */
+    public int endStyle() {
+        return endStyle;
+    }
+
+    /**
+     * Index of the span containing the visible offset, or the last span for the end offset.
+     */
+    public int spanAt(int offset) {
+        return search(starts, offset);
+    }
+
+    /**
+     * Index of the last span starting at or before the source offset, or -1 if there is none.
+     */
+    public int spanAtSource(int sourceOffset) {
+        if (count == 0 || sourceStarts[0] > sourceOffset) {
+            return -1;
+        }
+        return search(sourceStarts, sourceOffset);
+    }
+
+    private int search(int[] offsets, int offset) {
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (offsets[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return count == 0 ? -1 : low;
+    }
+
+    public void clear() {
+        length = 0;
+        count = 0;
+        endStyle = Style.PLAIN;
+    }
+
+    void endStyle(int style) {
+        endStyle = style;
+    }
+
+    /**
+     * Appends one visible character produced from {@code source[sourceStart, sourceEnd)}.
+     * The character joins the last span when it continues it in both texts with the same style.
+     */
+    void append(char c, int sourceStart, int sourceEnd, int style) {
+        ensureText(1);
+        boolean linear = sourceEnd - sourceStart == 1;
+        if (linear && count > 0 && canExtend(count - 1, sourceStart, style)) {
+            sourceEnds[count - 1] = sourceEnd;
+        } else {
+            addSpan(length, sourceStart, sourceEnd, style, !linear);
+        }
+        text[length++] = c;
+    }
+
+    /**
+     * Appends an unknown code shown verbatim as a sealed two-character span.
+     */
+    void appendPair(char first, char second, int sourceStart, int sourceEnd, int style) {
+        ensureText(2);
+        addSpan(length, sourceStart, sourceEnd, style, true);
+        text[length++] = first;
+        text[length++] = second;
+    }
+
+    /**
+     * Replaces the spans produced from the old source range {@code [sourceFrom, sourceTo)},
+     * shown at {@code [visibleFrom, visibleTo)}, with {@code fresh}. Spans after the range are
+     * shifted by {@code sourceDelta}. Both ends of the range must lie on span boundaries or inside
+     * unsealed spans.
+     */
+    void splice(int sourceFrom, int sourceTo, int visibleFrom, int visibleTo, SpanList fresh, int sourceDelta) {
+        int head = 0;
+        while (head < count && sourceEnds[head] <= sourceFrom) {
+            head++;
+        }
+        int tail = head;
+        while (tail < count && sourceEnds[tail] <= sourceTo) {
+            tail++;
+        }
+        boolean cutHead = head < count && sourceStarts[head] < sourceFrom;
+        boolean cutTail = tail < count && sourceStarts[tail] < sourceTo;
+
+        int headCount = cutHead ? head + 1 : head;
+        // A range inside a single span keeps that span as the head and re-adds its remainder as the tail.
+        boolean split = cutHead && head == tail;
+        int tailCount = count - tail;
+
+        int visibleDelta = fresh.length - (visibleTo - visibleFrom);
+        ensureText(Math.max(0, visibleDelta));
+        System.arraycopy(text, visibleTo, text, visibleFrom + fresh.length, length - visibleTo);
+        System.arraycopy(fresh.text, 0, text, visibleFrom, fresh.length);
+        length += visibleDelta;
+
+        int newCount = headCount + fresh.count + tailCount;
+        ensureSpans(newCount + 1);
+        int tailTarget = headCount + fresh.count;
+        if (split) {
+            shiftSpans(head + 1, tailTarget + 1, tailCount - 1);
+            starts[tailTarget] = visibleTo;
+            sourceStarts[tailTarget] = sourceTo;
+            sourceEnds[tailTarget] = sourceEnds[head];
+            styles[tailTarget] = styles[head];
+            sealed[tailTarget] = false;
+        } else {
+            shiftSpans(tail, tailTarget, tailCount);
+            if (cutTail) {
+                starts[tailTarget] = visibleTo;
+                sourceStarts[tailTarget] = sourceTo;
+            }
+        }
+        if (cutHead) {
+            sourceEnds[head] = sourceFrom;
+        }
+        for (int i = tailTarget; i < newCount; i++) {
+            starts[i] += visibleDelta;
+            sourceStarts[i] += sourceDelta;
+            sourceEnds[i] += sourceDelta;
+        }
+        for (int i = 0; i < fresh.count; i++) {
+            starts[headCount + i] = fresh.starts[i] + visibleFrom;
+            sourceStarts[headCount + i] = fresh.sourceStarts[i];
+            sourceEnds[headCount + i] = fresh.sourceEnds[i];
+            styles[headCount + i] = fresh.styles[i];
+            sealed[headCount + i] = fresh.sealed[i];
+        }
+        count = newCount;
+
+        int last = headCount + fresh.count;
+        if (last < count && last > 0 && canMerge(last - 1)) {
+            removeSpan(last);
+        }
+        if (headCount > 0 && headCount < count && canMerge(headCount - 1)) {
+            removeSpan(headCount);
+        }
+    }
+
+    private boolean canExtend(int span, int sourceStart, int style) {
+        return !sealed[span] && styles[span] == style && sourceEnds[span] == sourceStart;
+    }
+
+    private boolean canMerge(int span) {
+        return !sealed[span + 1] && canExtend(span, sourceStarts[span + 1], styles[span + 1]);
+    }
+
+    private void removeSpan(int span) {
+        sourceEnds[span - 1] = sourceEnds[span];
+        shiftSpans(span + 1, span, count - span - 1);
+        count--;
+    }
+
+    private void shiftSpans(int from, int to, int n) {
+        System.arraycopy(starts, from, starts, to, n);
+        System.arraycopy(sourceStarts, from, sourceStarts, to, n);
+        System.arraycopy(sourceEnds, from, sourceEnds, to, n);
+        System.arraycopy(styles, from, styles, to, n);
+        System.arraycopy(sealed, from, sealed, to, n);
+    }
+
+    private void addSpan(int start, int sourceStart, int sourceEnd, int style, boolean isSealed) {
+        ensureSpans(count + 1);
+        starts[count] = start;
+        sourceStarts[count] = sourceStart;
+        sourceEnds[count] = sourceEnd;
+        styles[count] = style;
+        sealed[count] = isSealed;
+        count++;
+    }
+
+    private void ensureText(int extra) {
+        if (length + extra > text.length) {
+            text = Arrays.copyOf(text, Math.max(text.length << 1, length + extra));
+        }
+    }
+
+    private void ensureSpans(int capacity) {
+        if (capacity > starts.length) {
+            int grown = Math.max(starts.length << 1, capacity);
+            starts = Arrays.copyOf(starts, grown);
+            sourceStarts = Arrays.copyOf(sourceStarts, grown);
+            sourceEnds = Arrays.copyOf(sourceEnds, grown);
+            styles = Arrays.copyOf(styles, grown);
+            sealed = Arrays.copyOf(sealed, grown);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Text style packed into a single {@code int}: the colour in the low 24 bits, either a legacy
+ * colour index or, for hex colours, the {@code 0xRRGGBB} value itself, a flag telling whether a
+ * colour is set at all, a flag telling hex colours apart, and one bit per format code.
+ */
+public final class Style {
+    public static final int PLAIN = 0;
+
+    public static final int COLOR_MASK = 0xFFFFFF;
+    public static final int COLORED = 1 << 24;
+    public static final int HEX = 1 << 25;
+    public static final int BOLD = 1 << 26;
+    public static final int ITALIC = 1 << 27;
+    public static final int UNDERLINE = 1 << 28;
+    public static final int STRIKETHROUGH = 1 << 29;
+    public static final int OBFUSCATED = 1 << 30;
+
+    /** Every bit that describes the colour. */
+    public static final int COLOR_BITS = COLOR_MASK | COLORED | HEX;
+
+    public static final int FORMAT_MASK = BOLD | ITALIC | UNDERLINE | STRIKETHROUGH | OBFUSCATED;
+
+    private static final String COLOR_CODES = "0123456789abcdef";
+
+    private static final int[] COLOR_RGB = {
+            0x000000, 0x0000AA, 0x00AA00, 0x00AAAA, 0xAA0000, 0xAA00AA, 0xFFAA00, 0xAAAAAA,
+            0x555555, 0x5555FF, 0x55FF55, 0x55FFFF, 0xFF5555, 0xFF55FF, 0xFFFF55, 0xFFFFFF
+    };
+
+    private Style() {
+    }
+
+    public static boolean hasColor(int style) {
+        return (style & COLORED) != 0;
+    }
+
+    public static boolean isHex(int style) {
+        return (style & HEX) != 0;
+    }
+
+    /**
+     * The legacy colour index of {@code style}, or the {@code 0xRRGGBB} value of a hex colour.
+     */
+    public static int color(int style) {
+        return style & COLOR_MASK;
+    }
+
+    /**
+     * The {@code 0xRRGGBB} value of the colour of {@code style}, legacy or hex.
+     */
+    public static int rgbOf(int style) {
+        return isHex(style) ? style & COLOR_MASK : rgb(style);
+    }
+
+    public static int withColor(int style, int color) {
+        return (style & ~COLOR_BITS) | COLORED | (color & 0xF);
+    }
+
+    public static int withRgb(int style, int rgb) {
+        return (style & ~COLOR_BITS) | COLORED | HEX | (rgb & COLOR_MASK);
+    }
+
+    /**
+     * {@code style} with the colour of {@code other}, or with no colour if {@code other} has none.
+     */
+    public static int withColorOf(int style, int other) {
+        return (style & ~COLOR_BITS) | (other & COLOR_BITS);
+    }
+
+    public static boolean has(int style, int flag) {
+        return (style & flag) == flag;
+    }
+
+    public static int formats(int style) {
+        return style & FORMAT_MASK;
+    }
+
+    /**
+     * Returns the colour index for a legacy colour code character, or -1 if it is not one.
+     */
+    public static int colorIndex(char code) {
+        if (code >= '0' && code <= '9') {
+            return code - '0';
+        }
+        if (code >= 'a' && code <= 'f') {
+            return code - 'a' + 10;
+        }
+        return -1;
+    }
+
+    public static char colorCode(int color) {
+        return COLOR_CODES.charAt(color & 0xF);
+    }
+
+    /**
+     * Returns the {@code 0xRRGGBB} value of a legacy colour index.
+     */
+    public static int rgb(int color) {
+        return COLOR_RGB[color & 0xF];
+    }
+
+    /**
+     * Returns the legacy colour index closest to {@code 0xRRGGBB}. The answer is looked up in a
+     * table of 32 levels per channel, so it costs no more than {@link #rgb(int)}.
+     */
+    public static int nearestColor(int rgb) {
+        return NearestColor.TABLE[(rgb >> 9 & 0x7C00) | (rgb >> 6 & 0x3E0) | (rgb >> 3 & 0x1F)];
+    }
+
+    /**
+     * Built on first use: each cell holds the colour nearest to its centre.
+     */
+    private static final class NearestColor {
+        static final byte[] TABLE = new byte[1 << 15];
+
+        static {
+            for (int cell = 0; cell < TABLE.length; cell++) {
+                int r = (cell >> 10) << 3 | 4;
+                int g = (cell >> 5 & 0x1F) << 3 | 4;
+                int b = (cell & 0x1F) << 3 | 4;
+                int best = 0;
+                int bestDistance = Integer.MAX_VALUE;
+                for (int color = 0; color < COLOR_RGB.length; color++) {
+                    int other = COLOR_RGB[color];
+                    int dr = r - (other >> 16 & 0xFF);
+                    int dg = g - (other >> 8 & 0xFF);
+                    int db = b - (other & 0xFF);
+                    int distance = dr * dr + dg * dg + db * db;
+                    if (distance < bestDistance) {
+                        best = color;
+                        bestDistance = distance;
+                    }
+                }
+                TABLE[cell] = (byte) best;
+            }
+        }
+    }
+
+    /**
+     * Returns the value of a hex digit in either case, or -1 if {@code c} is not one.
+     */
+    public static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the style flag toggled by a legacy format code character, or 0 if it is not one.
+     */
+    public static int formatFlag(char code) {
+        return switch (code) {
+            case 'l' -> BOLD;
+            case 'o' -> ITALIC;
+            case 'n' -> UNDERLINE;
+            case 'm' -> STRIKETHROUGH;
+            case 'k' -> OBFUSCATED;
+            default -> 0;
+        };
+    }
+
+    public static char formatCode(int flag) {
+        return switch (flag) {
+            case BOLD -> 'l';
+            case ITALIC -> 'o';
+            case UNDERLINE -> 'n';
+            case STRIKETHROUGH -> 'm';
+            case OBFUSCATED -> 'k';
+            default -> throw new IllegalArgumentException("Not a format flag: " + flag);
+        };
+    }
+
+    /**
+     * Applies a legacy code character to {@code style}. Returns -1 if {@code code} is not a
+     * recognised code, in which case the caller should treat it as plain text.
+     */
+    public static int apply(int style, char code) {
+        if (code == 'r') {
+            return PLAIN;
+        }
+        int color = colorIndex(code);
+        if (color >= 0) {
+            return withColor(style, color);
+        }
+        int flag = formatFlag(code);
+        return flag != 0 ? style | flag : -1;
+    }
+}
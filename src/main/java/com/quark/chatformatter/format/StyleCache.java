@@ -0,0 +1,47 @@
+package com.quark.chatformatter.format;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Values derived from styles, such as CSS, kept for the most recently used styles only.
+ * <p>
+ * The 16 legacy colours give a small, fixed set of styles, but hex colours allow millions, and a
+ * long gradient may use a new one for every character. Once full, the cache drops the style used
+ * least recently, so its size stays bounded however many colours a document goes through.
+ * Safe to share between threads.
+ *
+ * @param <V> the derived value
+ */
+public final class StyleCache<V> {
+    private final Map<Integer, V> values;
+
+    public StyleCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.values = new LinkedHashMap<>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, V> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * The value for {@code style}, made by {@code factory} if it is not cached.
+     */
+    public synchronized V get(int style, IntFunction<V> factory) {
+        V value = values.get(style);
+        if (value == null) {
+            value = factory.apply(style);
+            values.put(style, value);
+        }
+        return value;
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,524 @@
+package com.quark.chatformatter.format;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Conversion between parsed code text and JSON text components, as used by {@code tellraw} and
+ * the server-list MOTD.
+ * <p>
+ * Export writes straight from the spans to an {@link Appendable}, merging neighbouring spans of
+ * equal style into one component. Import reads the JSON in a single pass without building a tree
+ * and writes legacy codes as it goes. An object's {@code text} and {@code extra} are written where
+ * they are read; only if a style property that changes them follows, or {@code text} follows
+ * {@code extra}, is what they wrote dropped and read again once the object is closed. Components
+ * nested deeper than {@link #MAX_DEPTH} are rejected.
+ */
+public final class TextComponents {
+    /** Deepest nesting of arrays and objects {@link #toCodes} accepts. */
+    public static final int MAX_DEPTH = 512;
+
+    private static final String[] COLOR_NAMES = {
+            "black", "dark_blue", "dark_green", "dark_aqua", "dark_red", "dark_purple", "gold", "gray",
+            "dark_gray", "blue", "green", "aqua", "red", "light_purple", "yellow", "white"
+    };
+    private static final int[] FORMAT_FLAGS = {
+            Style.BOLD, Style.ITALIC, Style.UNDERLINE, Style.STRIKETHROUGH, Style.OBFUSCATED
+    };
+    private static final String[] FORMAT_NAMES = {
+            "bold", "italic", "underlined", "strikethrough", "obfuscated"
+    };
+
+    private TextComponents() {
+    }
+
+    public static String toJson(SpanList spans) {
+        StringBuilder out = new StringBuilder(spans.length() + 32);
+        write(spans, out);
+        return out.toString();
+    }
+
+    /**
+     * Writes {@code spans} as one component. A single run becomes a single object; anything else
+     * becomes an empty root whose {@code extra} holds one entry per run, plain runs as bare strings.
+     */
+    public static void write(SpanList spans, Appendable out) {
+        try {
+            int runs = 0;
+            for (int i = 0; i < spans.size(); i = nextRun(spans, i)) {
+                runs++;
+            }
+            if (runs <= 1) {
+                if (runs == 0) {
+                    out.append("{\"text\":\"\"}");
+                } else {
+                    writeRun(spans, 0, spans.length(), spans.style(0), out);
+                }
+                return;
+            }
+            out.append("{\"text\":\"\",\"extra\":[");
+            for (int i = 0; i < spans.size(); ) {
+                int next = nextRun(spans, i);
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeRun(spans, spans.start(i), spans.end(next - 1), spans.style(i), out);
+                i = next;
+            }
+            out.append("]}");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int nextRun(SpanList spans, int span) {
+        int style = spans.style(span);
+        int next = span + 1;
+        while (next < spans.size() && spans.style(next) == style) {
+            next++;
+        }
+        return next;
+    }
+
+    private static void writeRun(SpanList spans, int start, int end, int style, Appendable out) throws IOException {
+        if (style == Style.PLAIN) {
+            writeString(spans, start, end, out);
+            return;
+        }
+        out.append("{\"text\":");
+        writeString(spans, start, end, out);
+        writeStyle(style, out);
+        out.append('}');
+    }
+
+    private static void writeStyle(int style, Appendable out) throws IOException {
+        if (Style.isHex(style)) {
+            out.append(",\"color\":\"").append(String.format("#%06X", Style.color(style))).append('"');
+        } else if (Style.hasColor(style)) {
+            out.append(",\"color\":\"").append(COLOR_NAMES[Style.color(style)]).append('"');
+        }
+        for (int i = 0; i < FORMAT_FLAGS.length; i++) {
+            if (Style.has(style, FORMAT_FLAGS[i])) {
+                out.append(",\"").append(FORMAT_NAMES[i]).append("\":true");
+            }
+        }
+    }
+
+    /**
+     * Writes every span of {@code spans} with its visible and source range, for tools that need
+     * the parse itself rather than a component:
+     * {@code [{"text":"Hi","start":0,"end":2,"sourceStart":2,"sourceEnd":4,"color":"red"}]}.
+     */
+    public static void writeSpans(SpanList spans, Appendable out) {
+        try {
+            out.append('[');
+            for (int i = 0; i < spans.size(); i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append("{\"text\":");
+                writeString(spans, spans.start(i), spans.end(i), out);
+                out.append(",\"start\":").append(String.valueOf(spans.start(i)))
+                        .append(",\"end\":").append(String.valueOf(spans.end(i)))
+                        .append(",\"sourceStart\":").append(String.valueOf(spans.sourceStart(i)))
+                        .append(",\"sourceEnd\":").append(String.valueOf(spans.sourceEnd(i)));
+                writeStyle(spans.style(i), out);
+                out.append('}');
+            }
+            out.append(']');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(SpanList spans, int start, int end, Appendable out) throws IOException {
+        out.append('"');
+        for (int i = start; i < end; i++) {
+            writeChar(spans.charAt(i), out);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Writes {@code text} as a JSON string literal.
+     */
+    public static void writeString(CharSequence text, Appendable out) {
+        try {
+            out.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                writeChar(text.charAt(i), out);
+            }
+            out.append('"');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeChar(char c, Appendable out) throws IOException {
+        switch (c) {
+            case '"' -> out.append("\\\"");
+            case '\\' -> out.append("\\\\");
+            case '\n' -> out.append("\\n");
+            case '\r' -> out.append("\\r");
+            case '\t' -> out.append("\\t");
+            default -> {
+                if (c < 0x20) {
+                    out.append(String.format("\\u%04x", (int) c));
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a JSON text component to {@code §} code text. Properties other than text, colour,
+     * formats and {@code extra} are ignored; hex colours become {@code §x} codes.
+     *
+     * @throws IllegalArgumentException if {@code json} is not a well-formed component
+     */
+    public static String toCodes(CharSequence json) {
+        Reader reader = new Reader(json);
+        StringBuilder out = new StringBuilder(json.length());
+        reader.skipWhitespace();
+        reader.component(Style.PLAIN, out);
+        reader.skipWhitespace();
+        if (reader.index < json.length()) {
+            throw reader.error("Unexpected trailing content");
+        }
+        return out.toString();
+    }
+
+    private static final class Reader {
+        private static final String MARKER = String.valueOf(FormatParser.SECTION);
+
+        private final CharSequence json;
+        private int index;
+        /** Style the codes written so far leave in effect. */
+        private int emitted = Style.PLAIN;
+        /** Arrays and objects open around the current position. */
+        private int depth;
+
+        Reader(CharSequence json) {
+            this.json = json;
+        }
+
+        /**
+         * Reads a component and returns the style it passes on to siblings that follow it in an
+         * array.
+         */
+        int component(int inherited, StringBuilder out) {
+            char c = peek();
+            if (c == '"') {
+                text(inherited, out);
+                return inherited;
+            }
+            if (c == '[') {
+                // The first element is the parent of the ones after it.
+                enter();
+                index++;
+                skipWhitespace();
+                if (peek() == ']') {
+                    index++;
+                    depth--;
+                    return inherited;
+                }
+                int style = component(inherited, out);
+                while (separator(']')) {
+                    component(style, out);
+                }
+                depth--;
+                return style;
+            }
+            if (c == '{') {
+                return object(inherited, out);
+            }
+            throw error("Expected a text component");
+        }
+
+        private int object(int inherited, StringBuilder out) {
+            enter();
+            index++;
+            skipWhitespace();
+            int style = inherited;
+            if (peek() == '}') {
+                index++;
+                depth--;
+                return style;
+            }
+            int mark = out.length();
+            int markEmitted = emitted;
+            int text = -1;
+            int extra = -1;
+            boolean reread = false;
+            do {
+                String key = string();
+                expect(':');
+                if (key.equals("text")) {
+                    reread |= text >= 0 || extra >= 0;
+                    text = index;
+                    if (reread) {
+                        skipValue();
+                    } else {
+                        text(style, out);
+                    }
+                } else if (key.equals("extra")) {
+                    reread |= extra >= 0;
+                    extra = index;
+                    if (reread) {
+                        skipValue();
+                    } else {
+                        extra(style, out);
+                    }
+                } else {
+                    int changed = property(key, style);
+                    reread |= changed != style && (text >= 0 || extra >= 0);
+                    style = changed;
+                }
+            } while (separator('}'));
+            if (reread) {
+                int end = index;
+                out.setLength(mark);
+                emitted = markEmitted;
+                if (text >= 0) {
+                    index = text;
+                    text(style, out);
+                }
+                if (extra >= 0) {
+                    index = extra;
+                    extra(style, out);
+                }
+                index = end;
+            }
+            depth--;
+            return style;
+        }
+
+        private void extra(int style, StringBuilder out) {
+            if (peek() != '[') {
+                throw error("Expected an extra array");
+            }
+            enter();
+            index++;
+            skipWhitespace();
+            if (peek() != ']') {
+                do {
+                    component(style, out);
+                } while (separator(']'));
+            } else {
+                index++;
+            }
+            depth--;
+        }
+
+        /**
+         * Applies a style property to {@code style}; properties without a legacy equivalent are
+         * skipped.
+         */
+        private int property(String key, int style) {
+            if (key.equals("color")) {
+                if (peek() != '"') {
+                    skipValue();
+                    return style;
+                }
+                String name = string();
+                if (name.equals("reset")) {
+                    return Style.PLAIN;
+                }
+                return color(name, style);
+            }
+            for (int i = 0; i < FORMAT_NAMES.length; i++) {
+                if (key.equals(FORMAT_NAMES[i])) {
+                    if (peek() == 't' && literal("true")) {
+                        return style | FORMAT_FLAGS[i];
+                    }
+                    if (peek() == 'f' && literal("false")) {
+                        return style & ~FORMAT_FLAGS[i];
+                    }
+                    throw error("Expected true or false");
+                }
+            }
+            skipValue();
+            return style;
+        }
+
+        private void text(int style, StringBuilder out) {
+            int mark = out.length();
+            CodeWriter.appendTransition(out, emitted, style, MARKER);
+            int codes = out.length();
+            stringTo(out);
+            if (out.length() == codes) {
+                // Nothing visible, so the codes are not needed yet.
+                out.setLength(mark);
+            } else {
+                emitted = style;
+            }
+        }
+
+        String string() {
+            StringBuilder out = new StringBuilder();
+            stringTo(out);
+            return out.toString();
+        }
+
+        private void stringTo(StringBuilder out) {
+            if (peek() != '"') {
+                throw error("Expected a string");
+            }
+            index++;
+            int length = json.length();
+            while (index < length) {
+                char c = json.charAt(index++);
+                if (c == '"') {
+                    skipWhitespace();
+                    return;
+                }
+                if (c != '\\') {
+                    out.append(c);
+                    continue;
+                }
+                if (index >= length) {
+                    break;
+                }
+                char e = json.charAt(index++);
+                switch (e) {
+                    case '"', '\\', '/' -> out.append(e);
+                    case 'n' -> out.append('\n');
+                    case 'r' -> out.append('\r');
+                    case 't' -> out.append('\t');
+                    case 'b' -> out.append('\b');
+                    case 'f' -> out.append('\f');
+                    case 'u' -> {
+                        if (index + 4 > length) {
+                            throw error("Truncated escape");
+                        }
+                        try {
+                            out.append((char) Integer.parseInt(json, index, index + 4, 16));
+                        } catch (NumberFormatException ex) {
+                            throw error("Malformed escape");
+                        }
+                        index += 4;
+                    }
+                    default -> throw error("Malformed escape");
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private void skipValue() {
+            char c = peek();
+            switch (c) {
+                case '"' -> stringTo(new StringBuilder());
+                case '{', '[' -> {
+                    char close = c == '{' ? '}' : ']';
+                    enter();
+                    index++;
+                    skipWhitespace();
+                    if (peek() == close) {
+                        index++;
+                        skipWhitespace();
+                    } else {
+                        do {
+                            if (close == '}') {
+                                stringTo(new StringBuilder());
+                                expect(':');
+                            }
+                            skipValue();
+                        } while (separator(close));
+                    }
+                    depth--;
+                }
+                default -> {
+                    int start = index;
+                    while (index < json.length() && ",}] \t\r\n".indexOf(json.charAt(index)) < 0) {
+                        index++;
+                    }
+                    if (index == start) {
+                        throw error("Expected a value");
+                    }
+                    skipWhitespace();
+                }
+            }
+        }
+
+        /**
+         * Consumes a {@code ,} and returns true, or consumes {@code close} and returns false.
+         */
+        private boolean separator(char close) {
+            skipWhitespace();
+            char c = peek();
+            index++;
+            skipWhitespace();
+            if (c == ',') {
+                return true;
+            }
+            if (c == close) {
+                return false;
+            }
+            index--;
+            throw error("Expected ',' or '" + close + "'");
+        }
+
+        private boolean literal(String word) {
+            int end = index + word.length();
+            if (end > json.length() || !json.subSequence(index, end).toString().equals(word)) {
+                return false;
+            }
+            index = end;
+            skipWhitespace();
+            return true;
+        }
+
+        private void expect(char c) {
+            skipWhitespace();
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            index++;
+            skipWhitespace();
+        }
+
+        private void enter() {
+            if (++depth > MAX_DEPTH) {
+                throw error("Nested deeper than " + MAX_DEPTH + " levels");
+            }
+        }
+
+        private char peek() {
+            if (index >= json.length()) {
+                throw error("Unexpected end of input");
+            }
+            return json.charAt(index);
+        }
+
+        void skipWhitespace() {
+            while (index < json.length() && Character.isWhitespace(json.charAt(index))) {
+                index++;
+            }
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at " + index);
+        }
+
+        /**
+         * {@code style} with the named or {@code #RRGGBB} colour, or unchanged if the name is not
+         * a colour.
+         */
+        private static int color(String name, int style) {
+            for (int i = 0; i < COLOR_NAMES.length; i++) {
+                if (COLOR_NAMES[i].equals(name)) {
+                    return Style.withColor(style, i);
+                }
+            }
+            if (name.length() == 7 && name.charAt(0) == '#') {
+                try {
+                    return Style.withRgb(style, Integer.parseInt(name, 1, 7, 16));
+                } catch (NumberFormatException e) {
+                    return style;
+                }
+            }
+            return style;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.quark.chatformatter.format;
+
+/**
+ * Replacement of {@code [start, end)} in a text by {@code text}.
+ */
+public record TextEdit(int start, int end, String text) {
+
+    /**
+     * Builds the edit replacing {@code source[start, end)} by {@code replacement}, trimmed to the
+     * part that actually differs.
+     */
+    public static TextEdit minimal(CharSequence source, int start, int end, String replacement) {
+        int head = 0;
+        int max = Math.min(end - start, replacement.length());
+        while (head < max && source.charAt(start + head) == replacement.charAt(head)) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < max - head
+                && source.charAt(end - 1 - tail) == replacement.charAt(replacement.length() - 1 - tail)) {
+            tail++;
+        }
+        return new TextEdit(start + head, end - tail, replacement.substring(head, replacement.length() - tail));
+    }
+
+    public boolean isEmpty() {
+        return start == end && text.isEmpty();
+    }
+
+    /**
+     * Change in text length caused by this edit.
+     */
+    public int delta() {
+        return text.length() - (end - start);
+    }
+}
@@ -0,0 +1,14 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.quark.chatformatter.Copy")
+@Label("Copy")
+public class CopyEvent extends EditorEvent {
+    @Label("Minified")
+    public boolean minified;
+
+    @Label("Copied Length")
+    public int copiedLength;
+}
@@ -0,0 +1,19 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * Common fields of the editor's flight recorder events. The duration is the event's own.
+ */
+@Category("ChatFormatter")
+@StackTrace(false)
+public abstract class EditorEvent extends Event {
+    @Label("Document Length")
+    public int documentLength;
+
+    @Label("Span Count")
+    public int spanCount;
+}
@@ -0,0 +1,11 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.quark.chatformatter.ModeSwitch")
+@Label("Mode Switch")
+public class ModeSwitchEvent extends EditorEvent {
+    @Label("MOTD")
+    public boolean motd;
+}
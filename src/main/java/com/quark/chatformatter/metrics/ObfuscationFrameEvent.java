@@ -0,0 +1,14 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.quark.chatformatter.ObfuscationFrame")
+@Label("Obfuscation Frame")
+public class ObfuscationFrameEvent extends EditorEvent {
+    @Label("Runs Drawn")
+    public int runs;
+
+    @Label("Characters Drawn")
+    public int characters;
+}
@@ -0,0 +1,19 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("com.quark.chatformatter.PreviewApply")
+@Label("Preview Apply")
+@Description("Splicing rendered documents into the preview, on the FX thread")
+public class PreviewApplyEvent extends EditorEvent {
+    @Label("Frames")
+    public int frames;
+
+    @Label("Latency")
+    @Description("Time from the first edit to its result being shown")
+    @Timespan
+    public long latency;
+}
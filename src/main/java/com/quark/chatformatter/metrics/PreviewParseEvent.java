@@ -0,0 +1,16 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.quark.chatformatter.PreviewParse")
+@Label("Preview Parse")
+@Description("Parsing an edit and building the preview document for it, on the render worker")
+public class PreviewParseEvent extends EditorEvent {
+    @Label("Full Reparse")
+    public boolean reset;
+
+    @Label("Rendered Length")
+    public int renderedLength;
+}
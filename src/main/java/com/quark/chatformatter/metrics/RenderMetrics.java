@@ -0,0 +1,71 @@
+package com.quark.chatformatter.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Recent preview latencies and animation frame health, for the metrics overlay. Only touched on
+ * the FX thread.
+ */
+public final class RenderMetrics {
+    private static final int SAMPLES = 512;
+
+    private final long[] latencies = new long[SAMPLES];
+    private final long[] sorted = new long[SAMPLES];
+    private int latencyCount;
+    private int latencyNext;
+
+    private long lastFrame;
+    private long frames;
+    private long droppedFrames;
+    private long overrunFrames;
+
+    public void recordLatency(long nanos) {
+        latencies[latencyNext] = nanos;
+        latencyNext = (latencyNext + 1) % SAMPLES;
+        latencyCount = Math.min(latencyCount + 1, SAMPLES);
+    }
+
+    /**
+     * Records an animation frame that started at {@code start} and took {@code duration}, both in
+     * nanoseconds. Frames that should have run since the previous one count as dropped, and a frame
+     * that outlasts the interval counts as overrun.
+     */
+    public void recordFrame(long start, long duration, long interval) {
+        frames++;
+        if (lastFrame != 0) {
+            long missed = (start - lastFrame + interval / 2) / interval - 1;
+            if (missed > 0) {
+                droppedFrames += missed;
+            }
+        }
+        if (duration > interval) {
+            overrunFrames++;
+        }
+        lastFrame = start;
+    }
+
+    /**
+     * Forgets the previous frame, so a paused animation does not count as dropped frames.
+     */
+    public void pauseFrames() {
+        lastFrame = 0;
+    }
+
+    /**
+     * Latency at {@code percentile} (0 to 100) of the recent samples, in nanoseconds.
+     */
+    public long latency(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        System.arraycopy(latencies, 0, sorted, 0, latencyCount);
+        Arrays.sort(sorted, 0, latencyCount);
+        int index = (int) Math.ceil(percentile / 100 * latencyCount) - 1;
+        return sorted[Math.max(0, Math.min(index, latencyCount - 1))];
+    }
+
+    public String summary() {
+        return String.format("render p50 %.1f ms  p99 %.1f ms%nframes %d  dropped %d  overrun %d",
+                latency(50) / 1e6, latency(99) / 1e6, frames, droppedFrames, overrunFrames);
+    }
+}
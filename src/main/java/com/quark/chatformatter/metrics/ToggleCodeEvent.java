@@ -0,0 +1,17 @@
+package com.quark.chatformatter.metrics;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.quark.chatformatter.ToggleCode")
+@Label("Toggle Code")
+public class ToggleCodeEvent extends EditorEvent {
+    @Label("Code")
+    public char code;
+
+    @Label("Selection Length")
+    public int selectionLength;
+
+    @Label("Edits")
+    public int edits;
+}
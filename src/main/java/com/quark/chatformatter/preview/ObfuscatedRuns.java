@@ -0,0 +1,184 @@
+package com.quark.chatformatter.preview;
+
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.format.Style;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The obfuscated runs of the preview, kept per paragraph with offsets relative to the paragraph
+ * start so that an edit touches only the paragraphs it replaced. Each paragraph holds
+ * {@code (start, end, style)} triples in text order.
+ */
+public final class ObfuscatedRuns {
+    static final int[] NONE = new int[0];
+
+    private final List<int[]> lines = new ArrayList<>(List.of(NONE));
+    /** Paragraphs with at least one run. */
+    private int obfuscatedLines;
+
+    /**
+     * Collects the runs of {@code spans}, one entry per line, relative to the line start. Needs no
+     * FX state, so it can run off the FX thread.
+     */
+    public static List<int[]> collect(SpanList spans) {
+        List<int[]> collected = new ArrayList<>();
+        int[] runs = new int[24];
+        int n = 0;
+        int lineStart = 0;
+        for (int i = 0; i < spans.size(); i++) {
+            int style = spans.style(i);
+            boolean obfuscated = Style.has(style, Style.OBFUSCATED);
+            int start = spans.start(i);
+            int end = spans.end(i);
+            for (int j = start; j <= end; j++) {
+                if (j < end && spans.charAt(j) != '\n') {
+                    continue;
+                }
+                if (obfuscated && j > start) {
+                    if (n == runs.length) {
+                        runs = Arrays.copyOf(runs, n << 1);
+                    }
+                    runs[n++] = start - lineStart;
+                    runs[n++] = j - lineStart;
+                    runs[n++] = style;
+                }
+                if (j < end) {
+                    collected.add(n == 0 ? NONE : Arrays.copyOf(runs, n));
+                    n = 0;
+                    lineStart = j + 1;
+                }
+                start = j + 1;
+            }
+        }
+        collected.add(n == 0 ? NONE : Arrays.copyOf(runs, n));
+        return collected;
+    }
+
+    int size() {
+        return lines.size();
+    }
+
+    boolean isEmpty() {
+        return obfuscatedLines == 0;
+    }
+
+    int[] line(int index) {
+        return lines.get(index);
+    }
+
+    /**
+     * Replaces the runs of all paragraphs with those of {@code inserted}.
+     */
+    void reset(List<int[]> inserted) {
+        lines.clear();
+        lines.addAll(inserted);
+        obfuscatedLines = count(inserted);
+    }
+
+    /**
+     * Updates the runs after the text from column {@code startColumn} of paragraph {@code first}
+     * to column {@code endColumn} of paragraph {@code last} was replaced by the lines of
+     * {@code inserted}, the last of which is {@code insertedEnd} characters long.
+     */
+    void replace(int first, int startColumn, int last, int endColumn, List<int[]> inserted, int insertedEnd) {
+        int[] head = before(lines.get(first), startColumn);
+        int suffixShift = (inserted.size() == 1 ? startColumn : 0) + insertedEnd - endColumn;
+        int[] tail = after(lines.get(last), endColumn, suffixShift);
+
+        List<int[]> replacement = new ArrayList<>(inserted.size());
+        for (int i = 0; i < inserted.size(); i++) {
+            int[] line = inserted.get(i);
+            if (i == 0) {
+                line = join(head, shift(line, startColumn));
+            }
+            if (i == inserted.size() - 1) {
+                line = join(line, tail);
+            }
+            replacement.add(line);
+        }
+        List<int[]> window = lines.subList(first, last + 1);
+        obfuscatedLines += count(replacement) - count(window);
+        window.clear();
+        lines.addAll(first, replacement);
+    }
+
+    private static int count(List<int[]> runs) {
+        int count = 0;
+        for (int[] line : runs) {
+            count += line.length > 0 ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * The parts of {@code runs} before {@code column}.
+     */
+    private static int[] before(int[] runs, int column) {
+        int n = 0;
+        while (n < runs.length && runs[n] < column) {
+            n += 3;
+        }
+        if (n == 0) {
+            return NONE;
+        }
+        int[] head = Arrays.copyOf(runs, n);
+        head[n - 2] = Math.min(head[n - 2], column);
+        return head;
+    }
+
+    /**
+     * The parts of {@code runs} after {@code column}, moved by {@code shift}.
+     */
+    private static int[] after(int[] runs, int column, int shift) {
+        int from = runs.length;
+        while (from > 0 && runs[from - 2] > column) {
+            from -= 3;
+        }
+        if (from == runs.length) {
+            return NONE;
+        }
+        int[] tail = Arrays.copyOfRange(runs, from, runs.length);
+        tail[0] = Math.max(tail[0], column);
+        for (int i = 0; i < tail.length; i += 3) {
+            tail[i] += shift;
+            tail[i + 1] += shift;
+        }
+        return tail;
+    }
+
+    private static int[] shift(int[] runs, int shift) {
+        if (shift == 0 || runs.length == 0) {
+            return runs;
+        }
+        int[] shifted = runs.clone();
+        for (int i = 0; i < shifted.length; i += 3) {
+            shifted[i] += shift;
+            shifted[i + 1] += shift;
+        }
+        return shifted;
+    }
+
+    /**
+     * {@code a} followed by {@code b}, a run split by the edit joined again.
+     */
+    private static int[] join(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        boolean touching = a[a.length - 2] == b[0] && a[a.length - 1] == b[2];
+        int[] joined = Arrays.copyOf(a, a.length + b.length - (touching ? 3 : 0));
+        if (touching) {
+            joined[a.length - 2] = b[1];
+            System.arraycopy(b, 3, joined, a.length, b.length - 3);
+        } else {
+            System.arraycopy(b, 0, joined, a.length, b.length);
+        }
+        return joined;
+    }
+}
@@ -0,0 +1,28 @@
+package com.quark.chatformatter.preview;
+
+/**
+ * Random characters for obfuscated text from a reused buffer and an xorshift generator.
+ * Not thread-safe; each thread that draws obfuscated text keeps its own instance.
+ */
+public final class ObfuscatedText {
+    private static final char[] CHAR_SET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private char[] buffer = new char[64];
+    private int seed = (int) System.nanoTime() | 1;
+
+    public String next(int length) {
+        if (length > buffer.length) {
+            buffer = new char[Math.max(length, buffer.length << 1)];
+        }
+        int x = seed;
+        for (int i = 0; i < length; i++) {
+            x ^= x << 13;
+            x ^= x >>> 17;
+            x ^= x << 5;
+            buffer[i] = CHAR_SET[(int) (((x & 0xFFFFFFFFL) * CHAR_SET.length) >>> 32)];
+        }
+        seed = x;
+        return new String(buffer, 0, length);
+    }
+}
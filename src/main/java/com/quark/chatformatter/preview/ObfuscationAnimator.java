@@ -0,0 +1,122 @@
+package com.quark.chatformatter.preview;
+
+import com.quark.chatformatter.metrics.ObfuscationFrameEvent;
+import com.quark.chatformatter.metrics.RenderMetrics;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.value.ObservableValue;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import javafx.util.Duration;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.MultiChangeBuilder;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+
+/**
+ * Animates {@code §k} text in the preview.
+ * <p>
+ * Every frame redraws all visible obfuscated runs in one multi-change, filling them from a single
+ * reused buffer with an xorshift generator. The runs are looked up by paragraph in
+ * {@link ObfuscatedRuns}, so only paragraphs in view are visited, and the timeline is paused while
+ * the window is hidden, minimized or unfocused.
+ */
+public class ObfuscationAnimator {
+    private static final Duration FRAME = Duration.millis(50);
+
+    private final InlineCssTextArea area;
+    private final RenderMetrics metrics;
+    private final Timeline timeline = new Timeline(new KeyFrame(FRAME, event -> tick()));
+
+    private final ObservableValue<Boolean> showing;
+    private final ObservableValue<Boolean> focused;
+    private final ObservableValue<Boolean> iconified;
+
+    private final ObfuscatedRuns runs;
+    private int spanCount;
+
+    private final ObfuscatedText random = new ObfuscatedText();
+
+    ObfuscationAnimator(InlineCssTextArea area, ObfuscatedRuns runs, RenderMetrics metrics) {
+        this.area = area;
+        this.runs = runs;
+        this.metrics = metrics;
+        timeline.setCycleCount(Timeline.INDEFINITE);
+
+        ObservableValue<Window> window = area.sceneProperty().flatMap(Scene::windowProperty);
+        showing = window.flatMap(Window::showingProperty).orElse(false);
+        focused = window.flatMap(Window::focusedProperty).orElse(false);
+        iconified = window.flatMap(w -> w instanceof Stage stage
+                ? stage.iconifiedProperty()
+                : new SimpleBooleanProperty(false)).orElse(false);
+        showing.addListener((obs, oldValue, newValue) -> updateRunning());
+        focused.addListener((obs, oldValue, newValue) -> updateRunning());
+        iconified.addListener((obs, oldValue, newValue) -> updateRunning());
+    }
+
+    /**
+     * Picks up changes to the runs, which must match the preview text of {@code spanCount} spans.
+     */
+    void refresh(int spanCount) {
+        this.spanCount = spanCount;
+        updateRunning();
+    }
+
+    private void updateRunning() {
+        if (!runs.isEmpty() && showing.getValue() && focused.getValue() && !iconified.getValue()) {
+            timeline.play();
+        } else {
+            timeline.pause();
+            metrics.pauseFrames();
+        }
+    }
+
+    private void tick() {
+        long start = System.nanoTime();
+        ObfuscationFrameEvent event = new ObfuscationFrameEvent();
+        event.begin();
+        int firstVisible;
+        int lastVisible;
+        try {
+            firstVisible = area.firstVisibleParToAllParIndex();
+            lastVisible = area.lastVisibleParToAllParIndex();
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            // Nothing is laid out yet.
+            return;
+        }
+        MultiChangeBuilder<String, String, String> change = null;
+        int drawn = 0;
+        int characters = 0;
+        int last = Math.min(lastVisible, runs.size() - 1);
+        for (int paragraph = firstVisible; paragraph <= last; paragraph++) {
+            int[] line = runs.line(paragraph);
+            if (line.length == 0) {
+                continue;
+            }
+            if (change == null) {
+                change = area.createMultiChange();
+            }
+            int offset = area.getAbsolutePosition(paragraph, 0);
+            String paragraphStyle = area.getParagraph(paragraph).getParagraphStyle();
+            for (int i = 0; i < line.length; i += 3) {
+                int length = line[i + 1] - line[i];
+                drawn++;
+                characters += length;
+                change.replaceAbsolutely(offset + line[i], offset + line[i + 1], ReadOnlyStyledDocument.fromString(
+                        random.next(length), paragraphStyle, StyleCss.of(line[i + 2]), area.getSegOps()));
+            }
+        }
+        if (change != null) {
+            change.commit();
+        }
+        metrics.recordFrame(start, System.nanoTime() - start, (long) FRAME.toMillis() * 1_000_000);
+        if (event.shouldCommit()) {
+            event.documentLength = area.getLength();
+            event.spanCount = spanCount;
+            event.runs = drawn;
+            event.characters = characters;
+            event.commit();
+        }
+    }
+}
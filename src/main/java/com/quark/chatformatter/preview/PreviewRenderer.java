@@ -0,0 +1,337 @@
+package com.quark.chatformatter.preview;
+
+import com.quark.chatformatter.format.ParagraphDocument;
+import com.quark.chatformatter.format.ParsedDocument;
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.format.Style;
+import com.quark.chatformatter.format.TextEdit;
+import com.quark.chatformatter.metrics.PreviewApplyEvent;
+import com.quark.chatformatter.metrics.PreviewParseEvent;
+import com.quark.chatformatter.metrics.RenderMetrics;
+import javafx.scene.text.TextAlignment;
+import javafx.util.Duration;
+import org.fxmisc.richtext.InlineCssTextArea;
+import org.fxmisc.richtext.Selection;
+import org.fxmisc.richtext.SelectionImpl;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocumentBuilder;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.model.StyledSegment;
+import org.fxmisc.richtext.model.TextOps;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.fxmisc.richtext.model.TwoDimensional.Position;
+import org.fxmisc.richtext.util.UndoUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the preview area in sync with the code text, replacing only the visible range an edit
+ * actually changed.
+ * <p>
+ * Parsing and building the replacement documents happen on a {@link RenderScheduler} worker; the
+ * FX thread only splices the finished documents into the area. In paragraph mode the text is
+ * parsed line by line through a {@link ParagraphDocument}, so an edit rebuilds only the lines
+ * whose text or incoming style changed, and lines seen before come from its cache. Either way the
+ * area lays out only the paragraphs in view.
+ */
+public class PreviewRenderer {
+    /** How long the worker gathers edits before parsing them. */
+    private static final Duration RENDER_DELAY = Duration.millis(16);
+    private static final String ALIGNMENT_CLASS = "align-";
+    private static final int[] NO_RUNS = new int[0];
+    private static final String HIGHLIGHT_CLASS = "limit-violation";
+
+    private final InlineCssTextArea area;
+    private final TextOps<String, String> segOps;
+    /** Obfuscated runs of the preview, kept in step with its paragraphs on the FX thread. */
+    private final ObfuscatedRuns obfuscatedRuns = new ObfuscatedRuns();
+    /** Created with the first obfuscated text, so plain documents never start the animation. */
+    private ObfuscationAnimator obfuscation;
+    private final RenderScheduler<Frame> scheduler;
+    private final RenderMetrics metrics = new RenderMetrics();
+
+    /** Span count of the latest rendered revision, for instrumentation. */
+    private volatile int spanCount;
+
+    /** Requested mode, taken up by the worker at the next reset. */
+    private volatile boolean paragraphMode;
+
+    // Worker state: the mode the area was last reset in, and the document of each mode.
+    private boolean paragraphLayout;
+    private final ParsedDocument flow = new ParsedDocument();
+    private ParagraphDocument<Line> paragraphs;
+    private int paragraphSpans;
+
+    /** Ranges of the latest submitted text to highlight, as start and end pairs. */
+    private int[] highlights = NO_RUNS;
+    private final List<Selection<String, String, String>> highlightSelections = new ArrayList<>();
+
+    /** Worker-side generator for the first frame of newly inserted obfuscated text. */
+    private final ObfuscatedText random = new ObfuscatedText();
+
+    /**
+     * A rendered change: {@code [start, end)} of the preview is replaced by {@code document}, whose
+     * obfuscated runs {@code obfuscatedLines} holds per paragraph. With {@code paragraphs} set,
+     * start and end are paragraph indices; an end of -1 replaces everything.
+     */
+    private record Frame(int start, int end, boolean paragraphs, StyledDocument<String, String, String> document,
+                         List<int[]> obfuscatedLines, int spanCount, long submitted) {
+    }
+
+    /**
+     * One rendered line of paragraph mode. {@code obfuscatedRuns} are relative to its start.
+     */
+    private record Line(List<StyledSegment<String, String>> segments, String emptyStyle, int[] obfuscatedRuns,
+                        int spanCount) {
+    }
+
+    public PreviewRenderer(InlineCssTextArea area) {
+        this.area = area;
+        this.segOps = area.getSegOps();
+        this.scheduler = new RenderScheduler<>(this::render, this::apply, RENDER_DELAY);
+        // The preview is rewritten on every edit and animation frame; none of that is undoable.
+        area.setUndoManager(UndoUtils.noOpUndoManager());
+        setAlignment(TextAlignment.CENTER);
+    }
+
+    /**
+     * Switches between parsing the text as one stream and parsing it paragraph by paragraph, and
+     * re-renders the preview in the new mode.
+     */
+    public void setParagraphMode(boolean paragraphMode) {
+        if (this.paragraphMode != paragraphMode) {
+            this.paragraphMode = paragraphMode;
+            scheduler.reset();
+        }
+    }
+
+    /**
+     * Aligns every paragraph of the preview, including those added later, through a style class
+     * on the area rather than a style on each paragraph.
+     */
+    public void setAlignment(TextAlignment alignment) {
+        area.getStyleClass().removeIf(styleClass -> styleClass.startsWith(ALIGNMENT_CLASS));
+        area.getStyleClass().add(ALIGNMENT_CLASS + alignment.name().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Re-renders only what {@code edit}, made to the previously submitted source, changed.
+     */
+    public void update(TextEdit edit) {
+        scheduler.submit(edit);
+    }
+
+    /**
+     * Highlights {@code ranges} of the preview, given as start and end pairs in the latest
+     * submitted text. Ranges the preview has not caught up with yet are shown once it has.
+     */
+    public void setHighlights(int[] ranges) {
+        highlights = ranges;
+        showHighlights();
+    }
+
+    private void showHighlights() {
+        int count = highlights.length / 2;
+        while (highlightSelections.size() > count) {
+            Selection<String, String, String> selection = highlightSelections.remove(highlightSelections.size() - 1);
+            area.removeSelection(selection);
+            selection.dispose();
+        }
+        int length = area.getLength();
+        for (int i = 0; i < count; i++) {
+            if (i == highlightSelections.size()) {
+                Selection<String, String, String> selection = new SelectionImpl<>(HIGHLIGHT_CLASS + "-" + i, area,
+                        path -> path.getStyleClass().add(HIGHLIGHT_CLASS));
+                area.addSelection(selection);
+                highlightSelections.add(selection);
+            }
+            highlightSelections.get(i).selectRange(Math.min(highlights[2 * i], length),
+                    Math.min(highlights[2 * i + 1], length));
+        }
+    }
+
+    public RenderMetrics metrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of spans in the latest rendered revision.
+     */
+    public int spanCount() {
+        return spanCount;
+    }
+
+    private Frame render(RenderScheduler.Revision revision) {
+        PreviewParseEvent event = new PreviewParseEvent();
+        event.begin();
+        if (revision.reset()) {
+            paragraphLayout = paragraphMode;
+        }
+        Frame frame = paragraphLayout ? renderParagraphs(revision) : renderFlow(revision);
+        if (event.shouldCommit()) {
+            event.documentLength = revision.text().length();
+            event.spanCount = spanCount;
+            event.reset = revision.reset();
+            event.renderedLength = frame != null ? frame.document().length() : 0;
+            event.commit();
+        }
+        return frame;
+    }
+
+    private Frame renderFlow(RenderScheduler.Revision revision) {
+        String text = revision.text();
+        ParsedDocument.Change change;
+        if (revision.reset()) {
+            change = flow.reset(text, false);
+        } else {
+            change = flow.edit(text, revision.prefix(), flow.source().length() - revision.suffix(),
+                    text.length() - revision.suffix());
+        }
+        if (change == null) {
+            return null;
+        }
+        SpanList spans = flow.spans();
+        spanCount = spans.size();
+        return new Frame(change.start(), revision.reset() ? -1 : change.end(), false, toDocument(change.inserted()),
+                ObfuscatedRuns.collect(change.inserted()), spans.size(), revision.submitted());
+    }
+
+    private Frame renderParagraphs(RenderScheduler.Revision revision) {
+        if (paragraphs == null) {
+            paragraphs = new ParagraphDocument<>(this::toLine);
+        }
+        String text = revision.text();
+        ParagraphDocument.Change<Line> change;
+        if (revision.reset()) {
+            change = paragraphs.reset(text, false);
+        } else {
+            change = paragraphs.edit(text, revision.prefix(), paragraphs.source().length() - revision.suffix(),
+                    text.length() - revision.suffix());
+        }
+        if (change == null) {
+            return null;
+        }
+        for (Line line : change.removed()) {
+            paragraphSpans -= line.spanCount();
+        }
+        ReadOnlyStyledDocumentBuilder<String, String, String> builder =
+                new ReadOnlyStyledDocumentBuilder<>(segOps, "");
+        List<int[]> obfuscatedLines = new ArrayList<>(change.inserted().size());
+        for (Line line : change.inserted()) {
+            paragraphSpans += line.spanCount();
+            addParagraph(builder, line.segments(), line.emptyStyle());
+            obfuscatedLines.add(line.obfuscatedRuns());
+        }
+        spanCount = paragraphSpans;
+        boolean whole = revision.reset() || change.removed().isEmpty();
+        return new Frame(change.start(), whole ? -1 : change.start() + change.removed().size(), true,
+                builder.build(), obfuscatedLines, paragraphSpans, revision.submitted());
+    }
+
+    private void apply(List<Frame> frames) {
+        if (frames.isEmpty()) {
+            return;
+        }
+        PreviewApplyEvent event = new PreviewApplyEvent();
+        event.begin();
+        for (Frame frame : frames) {
+            int start = frame.start();
+            int end = frame.end();
+            if (end < 0) {
+                start = 0;
+                end = area.getLength();
+            } else if (frame.paragraphs()) {
+                start = area.getAbsolutePosition(frame.start(), 0);
+                end = area.getAbsolutePosition(frame.end() - 1, area.getParagraphLength(frame.end() - 1));
+            }
+            StyledDocument<String, String, String> document = frame.document();
+            if (frame.end() < 0) {
+                area.replace(start, end, document);
+                obfuscatedRuns.reset(frame.obfuscatedLines());
+                continue;
+            }
+            Position from = area.offsetToPosition(start, Bias.Forward);
+            Position to = area.offsetToPosition(end, Bias.Forward);
+            area.replace(start, end, document);
+            int lastInserted = document.getParagraphs().size() - 1;
+            obfuscatedRuns.replace(from.getMajor(), from.getMinor(), to.getMajor(), to.getMinor(),
+                    frame.obfuscatedLines(), document.getParagraph(lastInserted).length());
+        }
+        Frame last = frames.get(frames.size() - 1);
+        if (obfuscation == null && !obfuscatedRuns.isEmpty()) {
+            obfuscation = new ObfuscationAnimator(area, obfuscatedRuns, metrics);
+        }
+        if (obfuscation != null) {
+            obfuscation.refresh(last.spanCount());
+        }
+        if (highlights.length > 0) {
+            showHighlights();
+        }
+        long latency = System.nanoTime() - frames.get(0).submitted();
+        metrics.recordLatency(latency);
+        if (event.shouldCommit()) {
+            event.documentLength = area.getLength();
+            event.spanCount = last.spanCount();
+            event.frames = frames.size();
+            event.latency = latency;
+            event.commit();
+        }
+    }
+
+    private StyledDocument<String, String, String> toDocument(SpanList spans) {
+        ReadOnlyStyledDocumentBuilder<String, String, String> builder =
+                new ReadOnlyStyledDocumentBuilder<>(segOps, "");
+        List<StyledSegment<String, String>> paragraph = new ArrayList<>();
+        String lastStyle = "";
+        for (int i = 0; i < spans.size(); i++) {
+            String css = StyleCss.of(spans.style(i));
+            int segmentStart = spans.start(i);
+            int end = spans.end(i);
+            for (int j = segmentStart; j <= end; j++) {
+                if (j < end && spans.charAt(j) != '\n') {
+                    continue;
+                }
+                if (j > segmentStart) {
+                    paragraph.add(segment(spans, i, segmentStart, j));
+                }
+                if (j < end) {
+                    addParagraph(builder, paragraph, css);
+                    paragraph = new ArrayList<>();
+                }
+                segmentStart = j + 1;
+            }
+            lastStyle = css;
+        }
+        addParagraph(builder, paragraph, lastStyle);
+        return builder.build();
+    }
+
+    /**
+     * Renders the spans of one paragraph, which hold no line break, for the paragraph cache.
+     */
+    private Line toLine(SpanList spans) {
+        List<StyledSegment<String, String>> segments = new ArrayList<>(spans.size());
+        for (int i = 0; i < spans.size(); i++) {
+            if (spans.start(i) < spans.end(i)) {
+                segments.add(segment(spans, i, spans.start(i), spans.end(i)));
+            }
+        }
+        return new Line(segments, StyleCss.of(spans.endStyle()), ObfuscatedRuns.collect(spans).get(0), spans.size());
+    }
+
+    private StyledSegment<String, String> segment(SpanList spans, int span, int start, int end) {
+        int style = spans.style(span);
+        String text = Style.has(style, Style.OBFUSCATED) ? random.next(end - start) : spans.text(start, end);
+        return new StyledSegment<>(text, StyleCss.of(style));
+    }
+
+    private static void addParagraph(ReadOnlyStyledDocumentBuilder<String, String, String> builder,
+                                     List<StyledSegment<String, String>> segments, String emptyStyle) {
+        if (segments.isEmpty()) {
+            builder.addParagraph("", emptyStyle);
+        } else {
+            builder.addParagraph(segments);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.quark.chatformatter.preview;
+
+import com.quark.chatformatter.format.TextEdit;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Renders code text on a background virtual thread and hands the results to the FX thread.
+ * <p>
+ * Submissions are edits, which the worker applies to its own copy of the text. They are coalesced:
+ * the worker waits a fixed delay after the first one, then applies all that arrived and renders
+ * only the resulting text, so revisions superseded in the meantime are never parsed. Results not yet
+ * applied when the next one is ready are delivered together in one FX pulse. A revision that fails
+ * to render is logged and the latest text is rendered again from scratch.
+ *
+ * @param <R> what {@link Renderer} produces from a revision, applied on the FX thread
+ */
+public class RenderScheduler<R> {
+    private static final System.Logger LOGGER = System.getLogger(RenderScheduler.class.getName());
+
+    /**
+     * Turns a revision into a result, or null if nothing needs to change. Runs on the worker
+     * thread, which may keep the parsed state between revisions.
+     */
+    public interface Renderer<R> {
+        R render(Revision revision);
+    }
+
+    /**
+     * The latest submitted text. {@code prefix} and {@code suffix} are the lengths of its head and
+     * tail unchanged since the previous revision; {@code reset} asks for a full re-parse.
+     * {@code submitted} is the {@link System#nanoTime()} of the oldest submission the revision
+     * covers.
+     */
+    public record Revision(String text, int prefix, int suffix, boolean reset, long submitted) {
+    }
+
+    private final Renderer<R> renderer;
+    private final Consumer<List<R>> sink;
+
+    private final Object lock = new Object();
+    private List<TextEdit> pendingEdits = new ArrayList<>();
+    /** Length of the text once all submitted edits are applied. */
+    private int submittedLength;
+    /** Unchanged head and tail of all pending edits together. */
+    private int pendingPrefix;
+    private int pendingSuffix;
+    private boolean pendingReset;
+    private long pendingSince;
+    private final long delayMillis;
+
+    /** Results waiting for the FX thread, guarded by {@code lock} like the pending revision. */
+    private List<R> results = new ArrayList<>();
+    private boolean drainScheduled;
+
+    /**
+     * @param delay how long the worker waits after a submission for further ones before rendering
+     */
+    public RenderScheduler(Renderer<R> renderer, Consumer<List<R>> sink, Duration delay) {
+        this.renderer = renderer;
+        this.sink = sink;
+        this.delayMillis = (long) delay.toMillis();
+        Thread.ofVirtual().name("preview-render").start(this::run);
+    }
+
+    /**
+     * Schedules the text {@code edit} makes of the previously submitted one as the new document
+     * revision. Only the edited range is reparsed.
+     */
+    public void submit(TextEdit edit) {
+        synchronized (lock) {
+            int prefix = edit.start();
+            int suffix = submittedLength - edit.end();
+            if (!isPending()) {
+                pendingPrefix = prefix;
+                pendingSuffix = suffix;
+            } else {
+                // Text outside both edits is untouched by their combination.
+                pendingPrefix = Math.min(pendingPrefix, prefix);
+                pendingSuffix = Math.min(pendingSuffix, suffix);
+            }
+            setPending();
+            pendingEdits.add(edit);
+            submittedLength += edit.text().length() - (edit.end() - edit.start());
+        }
+    }
+
+    private boolean isPending() {
+        return !pendingEdits.isEmpty() || pendingReset;
+    }
+
+    private void setPending() {
+        if (!isPending()) {
+            pendingSince = System.nanoTime();
+        }
+        lock.notifyAll();
+    }
+
+    /**
+     * Schedules a full re-parse of the latest submitted text, for example after the renderer's
+     * layout changed.
+     */
+    public void reset() {
+        synchronized (lock) {
+            setPending();
+            pendingReset = true;
+        }
+    }
+
+    private void run() {
+        // The worker's copy of the text, and whether the previous full re-parse failed.
+        String text = "";
+        boolean failed = false;
+        try {
+            while (true) {
+                List<TextEdit> edits;
+                boolean reset;
+                int prefix;
+                int suffix;
+                long submitted;
+                synchronized (lock) {
+                    while (!isPending()) {
+                        lock.wait();
+                    }
+                }
+                if (delayMillis > 0) {
+                    Thread.sleep(delayMillis);
+                }
+                synchronized (lock) {
+                    edits = pendingEdits;
+                    reset = pendingReset || failed;
+                    prefix = pendingPrefix;
+                    suffix = pendingSuffix;
+                    submitted = pendingSince;
+                    pendingEdits = new ArrayList<>();
+                    pendingReset = false;
+                }
+                failed = false;
+                text = apply(text, edits);
+                R result;
+                try {
+                    result = renderer.render(new Revision(text, prefix, suffix, reset, submitted));
+                } catch (RuntimeException e) {
+                    // The renderer's state can no longer be trusted, so the latest text is rendered again
+                    // from scratch; if that already failed, the next submission starts over instead.
+                    LOGGER.log(System.Logger.Level.ERROR, "Rendering a preview revision failed", e);
+                    if (reset) {
+                        failed = true;
+                    } else {
+                        reset();
+                    }
+                    continue;
+                }
+                if (result != null) {
+                    publish(result);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String apply(String text, List<TextEdit> edits) {
+        if (edits.isEmpty()) {
+            return text;
+        }
+        StringBuilder builder = new StringBuilder(text);
+        for (TextEdit edit : edits) {
+            builder.replace(edit.start(), edit.end(), edit.text());
+        }
+        return builder.toString();
+    }
+
+    private void publish(R result) {
+        synchronized (lock) {
+            results.add(result);
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+        }
+        Platform.runLater(this::drain);
+    }
+
+    private void drain() {
+        List<R> ready;
+        synchronized (lock) {
+            ready = results;
+            results = new ArrayList<>();
+            drainScheduled = false;
+        }
+        sink.accept(ready);
+    }
+}
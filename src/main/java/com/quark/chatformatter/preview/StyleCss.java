@@ -0,0 +1,56 @@
+package com.quark.chatformatter.preview;
+
+import com.quark.chatformatter.format.Style;
+import com.quark.chatformatter.format.StyleCache;
+
+/**
+ * Inline CSS for every legacy style, built once and shared, and for recently used hex styles.
+ * <p>
+ * The table is indexed by colour slot (none or one of the 16 colours) and the format bits, so
+ * equal styles always map to the same {@code String} instance and JavaFX parses each one once.
+ * Hex styles are too many to build up front; their CSS is kept in a {@link StyleCache} instead.
+ */
+final class StyleCss {
+    private static final int FORMAT_SHIFT = Integer.numberOfTrailingZeros(Style.BOLD);
+    private static final int FORMAT_COMBINATIONS = (Style.FORMAT_MASK >>> FORMAT_SHIFT) + 1;
+
+    private static final String[] TABLE = new String[17 * FORMAT_COMBINATIONS];
+    private static final int HEX_CAPACITY = 4096;
+    private static final StyleCache<String> HEX = new StyleCache<>(HEX_CAPACITY);
+
+    static {
+        for (int slot = 0; slot <= 16; slot++) {
+            for (int formats = 0; formats < FORMAT_COMBINATIONS; formats++) {
+                int style = formats << FORMAT_SHIFT;
+                if (slot > 0) {
+                    style = Style.withColor(style, slot - 1);
+                }
+                TABLE[index(style)] = build(style).intern();
+            }
+        }
+    }
+
+    private StyleCss() {
+    }
+
+    static String of(int style) {
+        return Style.isHex(style) ? HEX.get(style, StyleCss::build) : TABLE[index(style)];
+    }
+
+    private static int index(int style) {
+        int slot = Style.hasColor(style) ? Style.color(style) + 1 : 0;
+        return slot * FORMAT_COMBINATIONS + (Style.formats(style) >>> FORMAT_SHIFT);
+    }
+
+    private static String build(int style) {
+        StringBuilder css = new StringBuilder();
+        if (Style.hasColor(style)) {
+            css.append(String.format("-fx-fill: #%06X; ", Style.rgbOf(style)));
+        }
+        if (Style.has(style, Style.BOLD)) css.append("-fx-font-weight: bold; ");
+        if (Style.has(style, Style.ITALIC)) css.append("-fx-font-style: italic; ");
+        if (Style.has(style, Style.UNDERLINE)) css.append("-fx-underline: true; ");
+        if (Style.has(style, Style.STRIKETHROUGH)) css.append("-fx-strikethrough: true; ");
+        return css.toString();
+    }
+}
@@ -0,0 +1,106 @@
+package com.quark.chatformatter.render;
+
+import com.quark.chatformatter.format.Style;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+
+/**
+ * The Latin-1 glyphs of one colour, weight and slant, rasterized once into a single image. Drawing
+ * a character copies its cell; characters outside the atlas are drawn from the font directly.
+ * An atlas built without cells draws every character from the font, which suits colours used for
+ * a few characters only.
+ * <p>
+ * Immutable once built, so one atlas is shared by every thread rendering that style.
+ */
+final class GlyphAtlas {
+    /** Font pixels per em: the bundled font is drawn at one pixel per unit at this size. */
+    static final int FONT_SIZE = 8;
+    /** Font pixels above the baseline, and the height of a cell. */
+    static final int ASCENT = 7;
+    static final int CELL_HEIGHT = 10;
+    static final int DEFAULT_COLOR = 0xFFFFFF;
+
+    private static final char FIRST = 0x20;
+    private static final char LAST = 0xFF;
+    private static final int COLUMNS = 16;
+    private static final int CELL_WIDTH = 14;
+    private static final double ITALIC_SHEAR = -0.25;
+
+    private final Font font;
+    private final Color color;
+    private final boolean bold;
+    private final boolean italic;
+    private final int scale;
+    private final BufferedImage image;
+
+    GlyphAtlas(Font font, int style, int scale) {
+        this(font, style, scale, true);
+    }
+
+    GlyphAtlas(Font font, int style, int scale, boolean cells) {
+        this.font = font.deriveFont((float) FONT_SIZE * scale);
+        this.color = new Color(Style.hasColor(style) ? Style.rgbOf(style) : DEFAULT_COLOR);
+        this.bold = Style.has(style, Style.BOLD);
+        this.italic = Style.has(style, Style.ITALIC);
+        this.scale = scale;
+        if (!cells) {
+            image = null;
+            return;
+        }
+
+        int rows = (LAST - FIRST + COLUMNS) / COLUMNS;
+        image = new BufferedImage(COLUMNS * CELL_WIDTH * scale, rows * CELL_HEIGHT * scale,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            for (char c = FIRST; c <= LAST; c++) {
+                int cell = c - FIRST;
+                drawGlyph(g, c, (cell % COLUMNS) * CELL_WIDTH * scale, (cell / COLUMNS) * CELL_HEIGHT * scale);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Draws {@code c} with its cell's top left corner at {@code (x, y)}.
+     */
+    void draw(Graphics2D g, char c, int x, int y) {
+        if (image == null || c < FIRST || c > LAST) {
+            drawGlyph(g, c, x, y);
+            return;
+        }
+        int cell = c - FIRST;
+        int sx = (cell % COLUMNS) * CELL_WIDTH * scale;
+        int sy = (cell / COLUMNS) * CELL_HEIGHT * scale;
+        int w = CELL_WIDTH * scale;
+        int h = CELL_HEIGHT * scale;
+        g.drawImage(image, x, y, x + w, y + h, sx, sy, sx + w, sy + h, null);
+    }
+
+    /**
+     * Rasterizes {@code c} straight from the font, the way Minecraft draws it: bold text is drawn
+     * twice one pixel apart and italic text is sheared about the baseline.
+     */
+    private void drawGlyph(Graphics2D g, char c, int x, int y) {
+        AffineTransform transform = g.getTransform();
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_OFF);
+        g.setFont(font);
+        g.setColor(color);
+        g.translate(x, y + ASCENT * scale);
+        if (italic) {
+            g.shear(ITALIC_SHEAR, 0);
+        }
+        String glyph = String.valueOf(c);
+        g.drawString(glyph, 0, 0);
+        if (bold) {
+            g.drawString(glyph, scale, 0);
+        }
+        g.setTransform(transform);
+    }
+}
@@ -0,0 +1,192 @@
+package com.quark.chatformatter.render;
+
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.GlyphWidths;
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.format.Style;
+import com.quark.chatformatter.format.StyleCache;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontFormatException;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Draws code text to an image with the bundled Minecraft font, the way the preview shows it: white
+ * unless coloured, every line centred, on the dirt background.
+ * <p>
+ * Works headless and off the FX thread. Glyphs come from a {@link GlyphAtlas} per colour, weight
+ * and slant, built on first use and shared, so one renderer can serve many threads. Hex colours
+ * are drawn from the font without an atlas, and only the most recently used are kept. Obfuscated text
+ * is drawn as a single frame of random characters of the same widths, picked from a fixed seed so
+ * the same text always gives the same image.
+ */
+public final class TextImageRenderer {
+    public static final int DEFAULT_SCALE = 2;
+
+    private static final String FONT = "/com/quark/chatformatter/fonts/minecraft_font.ttf";
+    private static final String BACKGROUND = "/com/quark/chatformatter/img/dirt.png";
+
+    /** Line height and padding around the text, in font pixels. */
+    private static final int LINE_HEIGHT = 10;
+    private static final int PADDING = 6;
+    private static final int ATLAS_STYLE_MASK = Style.COLOR_BITS | Style.BOLD | Style.ITALIC;
+    private static final int HEX_CAPACITY = 256;
+    private static final String OBFUSCATION_CHARS =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+
+    /** Candidates for each obfuscated advance, so random characters keep the line width. */
+    private static final char[][] OBFUSCATION_BY_ADVANCE = obfuscationTable();
+
+    private final int scale;
+    private final Font font;
+    private final BufferedImage background;
+    private final Map<Integer, GlyphAtlas> atlases = new ConcurrentHashMap<>();
+    private final StyleCache<GlyphAtlas> hexGlyphs = new StyleCache<>(HEX_CAPACITY);
+
+    public TextImageRenderer() {
+        this(DEFAULT_SCALE);
+    }
+
+    /**
+     * @param scale screen pixels per font pixel, like the GUI scale setting
+     */
+    public TextImageRenderer(int scale) {
+        if (scale < 1) {
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        }
+        this.scale = scale;
+        try (InputStream fontStream = TextImageRenderer.class.getResourceAsStream(FONT);
+             InputStream backgroundStream = TextImageRenderer.class.getResourceAsStream(BACKGROUND)) {
+            if (fontStream == null || backgroundStream == null) {
+                throw new IllegalStateException("Missing font or background resource");
+            }
+            font = Font.createFont(Font.TRUETYPE_FONT, fontStream);
+            background = ImageIO.read(backgroundStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (FontFormatException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Renders canonical code text, with {@code §} codes and real line breaks.
+     */
+    public BufferedImage render(String source) {
+        SpanList spans = FormatParser.parse(source, false);
+        int[] lineWidths = GlyphWidths.lineWidths(spans);
+        int textWidth = 0;
+        for (int width : lineWidths) {
+            textWidth = Math.max(textWidth, width);
+        }
+        int width = (textWidth + 2 * PADDING) * scale;
+        int height = (lineWidths.length * LINE_HEIGHT + 2 * PADDING) * scale;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            drawBackground(g, width, height);
+            int seed = 0x9E3779B9;
+            int line = 0;
+            int x = lineStart(lineWidths[0], textWidth);
+            int y = PADDING * scale;
+            for (int span = 0; span < spans.size(); span++) {
+                int style = spans.style(span);
+                boolean bold = Style.has(style, Style.BOLD);
+                boolean obfuscated = Style.has(style, Style.OBFUSCATED);
+                GlyphAtlas atlas = Style.isHex(style)
+                        ? hexGlyphs.get(style & ATLAS_STYLE_MASK, key -> new GlyphAtlas(font, key, scale, false))
+                        : atlases.computeIfAbsent(style & ATLAS_STYLE_MASK, key -> new GlyphAtlas(font, key, scale));
+                Color color = new Color(Style.hasColor(style) ? Style.rgbOf(style) : GlyphAtlas.DEFAULT_COLOR);
+                for (int i = spans.start(span), end = spans.end(span); i < end; i++) {
+                    char c = spans.charAt(i);
+                    if (c == '\n') {
+                        line++;
+                        x = lineStart(lineWidths[line], textWidth);
+                        y += LINE_HEIGHT * scale;
+                        continue;
+                    }
+                    int advance = GlyphWidths.advance(c, bold) * scale;
+                    if (obfuscated && c != ' ') {
+                        seed ^= seed << 13;
+                        seed ^= seed >>> 17;
+                        seed ^= seed << 5;
+                        c = obfuscate(c, seed);
+                    }
+                    atlas.draw(g, c, x, y);
+                    drawLines(g, style, color, x, y, advance);
+                    x += advance;
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Renders canonical code text to a PNG file.
+     */
+    public void write(String source, Path file) throws IOException {
+        ImageIO.write(render(source), "png", file.toFile());
+    }
+
+    private int lineStart(int lineWidth, int textWidth) {
+        return (PADDING + (textWidth - lineWidth) / 2) * scale;
+    }
+
+    /**
+     * Scales the background to cover the image, centred, like the preview's CSS.
+     */
+    private void drawBackground(Graphics2D g, int width, int height) {
+        double cover = Math.max((double) width / background.getWidth(), (double) height / background.getHeight());
+        int drawnWidth = (int) Math.ceil(background.getWidth() * cover);
+        int drawnHeight = (int) Math.ceil(background.getHeight() * cover);
+        g.drawImage(background, (width - drawnWidth) / 2, (height - drawnHeight) / 2, drawnWidth, drawnHeight, null);
+    }
+
+    private void drawLines(Graphics2D g, int style, Color color, int x, int y, int advance) {
+        if (!Style.has(style, Style.UNDERLINE) && !Style.has(style, Style.STRIKETHROUGH)) {
+            return;
+        }
+        g.setColor(color);
+        if (Style.has(style, Style.UNDERLINE)) {
+            g.fillRect(x - scale, y + (GlyphAtlas.ASCENT + 1) * scale, advance + scale, scale);
+        }
+        if (Style.has(style, Style.STRIKETHROUGH)) {
+            g.fillRect(x - scale, y + (GlyphAtlas.ASCENT - 4) * scale, advance + scale, scale);
+        }
+    }
+
+    private static char obfuscate(char c, int random) {
+        char[] candidates = OBFUSCATION_BY_ADVANCE[Math.min(GlyphWidths.advance(c, false), OBFUSCATION_BY_ADVANCE.length - 1)];
+        return candidates.length == 0 ? c : candidates[(int) (((random & 0xFFFFFFFFL) * candidates.length) >>> 32)];
+    }
+
+    private static char[][] obfuscationTable() {
+        StringBuilder[] byAdvance = new StringBuilder[16];
+        for (int i = 0; i < byAdvance.length; i++) {
+            byAdvance[i] = new StringBuilder();
+        }
+        for (int i = 0; i < OBFUSCATION_CHARS.length(); i++) {
+            char c = OBFUSCATION_CHARS.charAt(i);
+            byAdvance[GlyphWidths.advance(c, false)].append(c);
+        }
+        char[][] table = new char[byAdvance.length][];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = byAdvance[i].toString().toCharArray();
+        }
+        return table;
+    }
+}
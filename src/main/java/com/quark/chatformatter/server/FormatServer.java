@@ -0,0 +1,205 @@
+package com.quark.chatformatter.server;
+
+import com.quark.chatformatter.batch.BatchConverter;
+import com.quark.chatformatter.format.CodeForm;
+import com.quark.chatformatter.format.CodeMinifier;
+import com.quark.chatformatter.format.FormatParser;
+import com.quark.chatformatter.format.GlyphWidths;
+import com.quark.chatformatter.format.LineCentering;
+import com.quark.chatformatter.format.SpanList;
+import com.quark.chatformatter.format.TextComponents;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Local HTTP service for the parsing, conversion, minification and measurement the editor does,
+ * without JavaFX. Each request runs on its own virtual thread.
+ * <p>
+ * Every endpoint takes the code text as a UTF-8 {@code POST} body and options as query
+ * parameters. With {@code batch=true} each line of the body is a separate record and the response
+ * has one line per record, in order, a final line break not starting another; otherwise the whole
+ * body is one record and may span lines. JSON nested deeper than {@link TextComponents#MAX_DEPTH}
+ * is refused like any other malformed input, and a body over {@link #MAX_BODY_BYTES} with 413.
+ * <ul>
+ *     <li>{@code /parse?from=FORM}: the spans as JSON</li>
+ *     <li>{@code /convert?from=FORM&to=FORM}: the text in another form, {@code json} included</li>
+ *     <li>{@code /minify?form=FORM}: the text with the fewest codes that render the same</li>
+ *     <li>{@code /measure?from=FORM&width=PX&lines=N}: line widths in pixels and any overflow</li>
+ *     <li>{@code GET /stats}: request counts, throughput and latency percentiles</li>
+ * </ul>
+ * Forms are named as for {@link CodeForm#of}; {@code from} defaults to {@code section}.
+ */
+public final class FormatServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8085;
+    /** Largest request body accepted: room for a joined batch record at up to four bytes a character. */
+    public static final int MAX_BODY_BYTES = 4 * BatchConverter.MAX_JOINED_CHARS;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final RequestStats stats = new RequestStats();
+
+    public FormatServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 1024);
+        server.setExecutor(executor);
+        endpoint("/parse", "application/json", query -> {
+            CodeForm from = CodeForm.of(query.getOrDefault("from", "section"));
+            return (record, out) -> TextComponents.writeSpans(parse(record, from), out);
+        });
+        endpoint("/convert", "text/plain", query -> {
+            String to = query.get("to");
+            if (to == null) {
+                throw new IllegalArgumentException("Missing to");
+            }
+            return BatchConverter.between(query.getOrDefault("from", "section"), to);
+        });
+        endpoint("/minify", "text/plain", query -> {
+            CodeForm form = CodeForm.of(query.getOrDefault("form", "section"));
+            return (record, out) -> form.convert(
+                    CodeMinifier.minify(CodeForm.SECTION.convert(record, form), false), CodeForm.SECTION, out);
+        });
+        endpoint("/measure", "application/json", query -> {
+            CodeForm from = CodeForm.of(query.getOrDefault("from", "section"));
+            int width = Integer.parseInt(query.getOrDefault("width", String.valueOf(LineCentering.MOTD_WIDTH)));
+            int lines = Integer.parseInt(query.getOrDefault("lines", String.valueOf(LineCentering.MOTD_LINES)));
+            return (record, out) -> measure(parse(record, from), width, lines, out);
+        });
+        server.createContext("/stats", exchange -> {
+            try (exchange) {
+                send(exchange, 200, "application/json", stats.toJson());
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+
+    private static SpanList parse(String record, CodeForm from) {
+        return FormatParser.parse(from == CodeForm.SECTION ? record : CodeForm.SECTION.convert(record, from), false);
+    }
+
+    private static void measure(SpanList spans, int width, int lines, StringBuilder out) {
+        out.append("{\"lines\":[");
+        int[] widths = GlyphWidths.lineWidths(spans);
+        int max = 0;
+        for (int i = 0; i < widths.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(widths[i]);
+            max = Math.max(max, widths[i]);
+        }
+        out.append("],\"width\":").append(max).append(",\"overflow\":");
+        String overflow = LineCentering.overflow(spans, width, lines);
+        if (overflow == null) {
+            out.append("null");
+        } else {
+            TextComponents.writeString(overflow, out);
+        }
+        out.append('}');
+    }
+
+    private void endpoint(String path, String contentType,
+                          Function<Map<String, String>, BatchConverter.Conversion> conversions) {
+        server.createContext(path, exchange -> {
+            try (exchange) {
+                long start = System.nanoTime();
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    exchange.getResponseHeaders().set("Allow", "POST");
+                    send(exchange, 405, "text/plain", "POST only\n");
+                    return;
+                }
+                byte[] body = exchange.getRequestBody().readNBytes(MAX_BODY_BYTES + 1);
+                if (body.length > MAX_BODY_BYTES) {
+                    long sent = send(exchange, 413, "text/plain", "Body larger than " + MAX_BODY_BYTES + " bytes\n");
+                    stats.record(0, body.length, sent, System.nanoTime() - start, true);
+                    return;
+                }
+                int records = 0;
+                int status = 200;
+                String response;
+                String type = contentType;
+                try {
+                    Map<String, String> query = query(exchange);
+                    BatchConverter.Conversion conversion = conversions.apply(query);
+                    String text = new String(body, StandardCharsets.UTF_8);
+                    StringBuilder out = new StringBuilder(text.length() + 16);
+                    if (Boolean.parseBoolean(query.get("batch"))) {
+                        String[] lines = text.split("\r?\n", -1);
+                        // A final line break ends the last record rather than starting an empty one.
+                        int count = lines.length > 1 && text.endsWith("\n") ? lines.length - 1 : lines.length;
+                        for (; records < count; records++) {
+                            if (records > 0) {
+                                out.append('\n');
+                            }
+                            conversion.convert(lines[records], out);
+                        }
+                        if (type.equals("application/json")) {
+                            type = "application/x-ndjson";
+                        }
+                    } else {
+                        conversion.convert(text, out);
+                        records = 1;
+                    }
+                    response = out.toString();
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    type = "text/plain";
+                    response = e.getMessage() + "\n";
+                } catch (RuntimeException e) {
+                    status = 500;
+                    type = "text/plain";
+                    response = e + "\n";
+                }
+                long sent = send(exchange, status, type, response);
+                stats.record(records, body.length, sent, System.nanoTime() - start, status != 200);
+            }
+        });
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return query;
+        }
+        for (String parameter : raw.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : parameter.substring(equals + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private static long send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        return bytes.length;
+    }
+}
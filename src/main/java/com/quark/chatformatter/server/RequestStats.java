@@ -0,0 +1,74 @@
+package com.quark.chatformatter.server;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts, throughput and recent latencies of a {@link FormatServer}. Safe to update from
+ * any number of request threads.
+ */
+final class RequestStats {
+    private static final int SAMPLES = 4096;
+
+    private final long started = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    private final long[] latencies = new long[SAMPLES];
+    private int latencyCount;
+    private int latencyNext;
+    private long maxLatency;
+
+    void record(int recordCount, long requestBytes, long responseBytes, long latencyNanos, boolean failed) {
+        requests.increment();
+        records.add(recordCount);
+        bytesIn.add(requestBytes);
+        bytesOut.add(responseBytes);
+        if (failed) {
+            errors.increment();
+        }
+        synchronized (latencies) {
+            latencies[latencyNext] = latencyNanos;
+            latencyNext = (latencyNext + 1) % SAMPLES;
+            latencyCount = Math.min(latencyCount + 1, SAMPLES);
+            maxLatency = Math.max(maxLatency, latencyNanos);
+        }
+    }
+
+    String toJson() {
+        long[] sorted;
+        long max;
+        synchronized (latencies) {
+            sorted = Arrays.copyOf(latencies, latencyCount);
+            max = maxLatency;
+        }
+        Arrays.sort(sorted);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"uptimeSeconds\":").append(Math.round(seconds))
+                .append(",\"requests\":").append(requests.sum())
+                .append(",\"records\":").append(records.sum())
+                .append(",\"errors\":").append(errors.sum())
+                .append(",\"bytesIn\":").append(bytesIn.sum())
+                .append(",\"bytesOut\":").append(bytesOut.sum())
+                .append(",\"requestsPerSecond\":").append(Math.round(requests.sum() / seconds))
+                .append(",\"recordsPerSecond\":").append(Math.round(records.sum() / seconds))
+                .append(",\"latencyMicros\":{\"p50\":").append(percentile(sorted, 50) / 1000)
+                .append(",\"p99\":").append(percentile(sorted, 99) / 1000)
+                .append(",\"max\":").append(max / 1000)
+                .append(",\"samples\":").append(sorted.length)
+                .append("}}");
+        return json.toString();
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
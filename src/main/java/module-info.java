@@ -1,11 +1,17 @@
 module com.quark.chatformatter {
     requires javafx.controls;
     requires javafx.fxml;
+    requires java.desktop;
+    requires jdk.jfr;
+    requires jdk.httpserver;
 
     requires org.controlsfx.controls;
     requires org.kordamp.ikonli.javafx;
     requires org.fxmisc.richtext;
+    requires org.fxmisc.flowless;
 
     opens com.quark.chatformatter to javafx.fxml;
     exports com.quark.chatformatter;
+    exports com.quark.chatformatter.format;
+    exports com.quark.chatformatter.render;
 }
\ No newline at end of file
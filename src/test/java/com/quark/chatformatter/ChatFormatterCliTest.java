@@ -0,0 +1,61 @@
+package com.quark.chatformatter;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatFormatterCliTest {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    @Test
+    void convertsStandardInput() {
+        assertEquals(0, run("§aGreen\n§lbold\n", "convert", "--to", "ampersand"));
+        assertEquals("&aGreen\n&lbold\n", out());
+    }
+
+    @Test
+    void reportsMinifySavingsOnTheErrorStream() {
+        assertEquals(0, run("§c§aGreen\n", "convert", "--to", "section", "--minify"));
+        assertEquals("§aGreen\n", out());
+        assertEquals("minified 11 -> 8 bytes" + System.lineSeparator(), err());
+    }
+
+    @Test
+    void rejectsUnknownOptions() {
+        assertEquals(2, run("", "convert", "--to", "section", "--bogus"));
+        assertTrue(err().startsWith("Unknown option: --bogus"), err());
+        assertEquals("", out());
+    }
+
+    @Test
+    void readsNamesIndependentlyOfTheLocale() {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+        try {
+            assertEquals(0, run("§aa\n§bb\n", "convert", "--from", "SECTION", "--to", "section", "--newlines", "split"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private int run(String input, String... args) {
+        return ChatFormatterCli.run(args, new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+    }
+
+    private String out() {
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private String err() {
+        return err.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CodeDocumentTest {
+
+    @Test
+    void decodesEscapesCompletedInTheEscapedView() {
+        CodeDocument document = new CodeDocument();
+        document.apply(new TextEdit(0, 0, "a§lb"));
+        document.setEscaped(true);
+        assertEquals("a\\u00A7lb", document.display());
+
+        // Typing the last character of an escape turns it into a code.
+        document.apply(document.canonicalEdit(9, 9, "\\u00A"));
+        assertEquals("a§lb\\u00A", document.text());
+        assertEquals("\\u00A", document.apply(document.canonicalEdit(14, 14, "7")));
+        assertEquals("a§lb§", document.text());
+
+        // Deleting into an escape keeps the part of it outside the deletion.
+        document.apply(document.canonicalEdit(0, 3, ""));
+        assertEquals("00A7lb\\u00A7", document.display());
+        assertEquals("00A7lb§", document.text());
+    }
+
+    @Test
+    void editsMatchAFreshRecompute() {
+        Random random = new Random(70);
+        for (int run = 0; run < 300; run++) {
+            CodeDocument document = new CodeDocument();
+            String text = Samples.codes(random, random.nextInt(40), true);
+            assertEquals("", document.apply(new TextEdit(0, 0, text)));
+            for (int step = 0; step < 40; step++) {
+                if (random.nextInt(10) == 0) {
+                    boolean escaped = !document.isEscaped();
+                    TextEdit decoded = document.setEscaped(escaped);
+                    String expected = escaped ? decode(text) : text;
+                    if (decoded == null) {
+                        assertEquals(text, expected, text);
+                    } else {
+                        assertEquals(expected, Samples.apply(text, decoded), text);
+                    }
+                    text = expected;
+                } else if (document.isEscaped()) {
+                    String display = document.display();
+                    TextEdit shown = Samples.edit(random, display, true);
+                    String replacement = document.encode(shown.text());
+                    TextEdit edit = document.canonicalEdit(shown.start(), shown.end(), replacement);
+                    String removed = document.apply(edit);
+                    assertEquals(text.substring(edit.start(), edit.end()), removed, text);
+                    text = decode(Samples.apply(display, new TextEdit(shown.start(), shown.end(), replacement)));
+                    assertEquals(text, document.text(), display);
+                } else {
+                    TextEdit edit = Samples.edit(random, text, true);
+                    assertEquals(text.substring(edit.start(), edit.end()), document.apply(edit), text);
+                    text = Samples.apply(text, edit);
+                }
+                assertDocument(text, document);
+            }
+        }
+    }
+
+    @Test
+    void switchingViewsWithoutLiteralEscapesChangesNothing() {
+        CodeDocument document = new CodeDocument();
+        document.apply(new TextEdit(0, 0, "§a\\u00"));
+        assertNull(document.setEscaped(true));
+        assertNull(document.setEscaped(false));
+        assertEquals("§a\\u00", document.text());
+    }
+
+    private static void assertDocument(String text, CodeDocument document) {
+        assertEquals(text, document.text());
+        assertEquals(text, document.chars().toString());
+        assertEquals(text.length(), document.length());
+        String display = document.display();
+        assertEquals(document.isEscaped() ? CodeForm.ESCAPED.convert(text, CodeForm.SECTION) : text, display);
+        int[] shown = new int[text.length() + 1];
+        for (int i = 0; i <= text.length(); i++) {
+            shown[i] = document.isEscaped() ? document.encode(text.substring(0, i)).length() : i;
+            assertEquals(shown[i], document.toDisplay(i), text);
+        }
+        int canonical = 0;
+        for (int i = 0; i <= display.length(); i++) {
+            while (canonical < text.length() && shown[canonical + 1] <= i) {
+                canonical++;
+            }
+            boolean inside = shown[canonical] < i;
+            assertEquals(canonical, document.toCanonical(i, false), text);
+            assertEquals(inside ? canonical + 1 : canonical, document.toCanonical(i, true), text);
+        }
+    }
+
+    private static String decode(String display) {
+        return CodeForm.SECTION.convert(display, CodeForm.ESCAPED);
+    }
+}
@@ -0,0 +1,64 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CodeMinifierTest {
+    private static final int SPACE_SENSITIVE = Style.UNDERLINE | Style.STRIKETHROUGH | Style.OBFUSCATED;
+
+    @Test
+    void dropsRedundantCodes() {
+        assertEquals("§ab", CodeMinifier.minify("§c§ab", false));
+        assertEquals("§aa b", CodeMinifier.minify("§aa §ab", false));
+        assertEquals("a", CodeMinifier.minify("a§r", false));
+    }
+
+    @Test
+    void spacesTakeTheCheapestStyle() {
+        assertEquals(7, CodeMinifier.minify("§aa§c §cb", false).length());
+        assertEquals("§la§r §lb", CodeMinifier.minify("§la§r §lb", false));
+    }
+
+    @Test
+    void keepsTextThatCannotShrink() {
+        String text = "§nunder §rline";
+        assertEquals(text, CodeMinifier.minify(text, false));
+    }
+
+    @Test
+    void rendersTheSame() {
+        for (boolean escaped : new boolean[]{false, true}) {
+            Random random = new Random(escaped ? 41 : 40);
+            for (int run = 0; run < 5000; run++) {
+                String text = Samples.codes(random, random.nextInt(60), escaped);
+                String minified = CodeMinifier.minify(text, escaped);
+                assertTrue(minified.length() <= text.length(), text);
+                assertRendersSame(FormatParser.parse(text, escaped), FormatParser.parse(minified, escaped), text);
+            }
+        }
+    }
+
+    /**
+     * Same text, and the same style wherever it shows: line breaks may take any style, and plain
+     * spaces any style of the same boldness that does not draw a line through or under them.
+     */
+    private static void assertRendersSame(SpanList expected, SpanList actual, String text) {
+        assertEquals(expected.text(), actual.text(), text);
+        for (int i = 0; i < expected.length(); i++) {
+            char c = expected.charAt(i);
+            int a = expected.spanAt(i);
+            int want = expected.style(a);
+            int have = actual.style(actual.spanAt(i));
+            if (expected.isSealed(a) || c != '\n' && (c != ' ' || (want & SPACE_SENSITIVE) != 0)) {
+                assertEquals(want, have, text);
+            } else if (c == ' ') {
+                assertEquals(want & Style.BOLD, have & Style.BOLD, text);
+                assertEquals(0, have & SPACE_SENSITIVE, text);
+            }
+        }
+    }
+}
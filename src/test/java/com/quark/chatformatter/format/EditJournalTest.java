@@ -0,0 +1,149 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EditJournalTest {
+    private final StringBuilder text = new StringBuilder();
+    private final EditJournal journal = new EditJournal();
+
+    @Test
+    void mergesTypingUntilALineBreak() {
+        type(0, 0, "a");
+        type(1, 1, "b");
+        type(2, 2, "c");
+        type(3, 3, "\n");
+        type(4, 4, "d");
+        type(5, 5, "e");
+        type(5, 6, "");
+        type(4, 5, "");
+
+        // The line break starts a step of its own, which the typing after it joins.
+        undo();
+        assertEquals("abc\nde", text.toString());
+        undo();
+        assertEquals("abc", text.toString());
+        undo();
+        assertEquals("", text.toString());
+        assertFalse(journal.canUndo());
+        redo();
+        redo();
+        redo();
+        assertEquals("abc\n", text.toString());
+        assertFalse(journal.canRedo());
+    }
+
+    @Test
+    void undoesAStepAsAWhole() {
+        type(0, 0, "Hello");
+        journal.begin();
+        type(5, 5, "§r");
+        type(0, 0, "§l");
+        journal.end();
+
+        TextEdit last = undo();
+        assertEquals("Hello", text.toString());
+        assertEquals(new TextEdit(5, 7, ""), last);
+        redo();
+        assertEquals("§lHello§r", text.toString());
+    }
+
+    @Test
+    void leavesTheTextAloneWhenItNoLongerMatches() {
+        type(0, 0, "Hello");
+        journal.begin();
+        type(0, 0, "§l");
+        type(7, 7, "§r");
+        journal.end();
+        // Changed behind the journal's back, so only the edit undone first would still match.
+        text.replace(0, 2, "!!");
+
+        assertNull(undo());
+        assertEquals("!!Hello§r", text.toString());
+        assertFalse(journal.canUndo());
+        assertFalse(journal.canRedo());
+    }
+
+    @Test
+    void dropsTheOldestStepsPastTheCapacity() {
+        EditJournal small = new EditJournal(10);
+        small.record(new TextEdit(0, 0, "aaaa\n"), "");
+        small.record(new TextEdit(5, 5, "bbbb\n"), "");
+        small.record(new TextEdit(10, 10, "cccc\n"), "");
+
+        text.append("aaaa\nbbbb\ncccc\n");
+        assertNotNull(small.undo(() -> text, this::apply));
+        assertNotNull(small.undo(() -> text, this::apply));
+        assertFalse(small.canUndo());
+        assertEquals("aaaa\n", text.toString());
+    }
+
+    @Test
+    void undoingEverythingRestoresEveryRevision() {
+        Random random = new Random(90);
+        for (int run = 0; run < 300; run++) {
+            text.setLength(0);
+            journal.clear();
+            List<String> revisions = new ArrayList<>();
+            revisions.add("");
+            for (int step = 0; step < 30; step++) {
+                if (random.nextInt(4) == 0) {
+                    journal.begin();
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        TextEdit edit = Samples.edit(random, text.toString(), true);
+                        type(edit.start(), edit.end(), edit.text());
+                    }
+                    journal.end();
+                } else {
+                    TextEdit edit = Samples.edit(random, text.toString(), true);
+                    type(edit.start(), edit.end(), edit.text());
+                }
+                revisions.add(text.toString());
+            }
+
+            // Typing may merge into one step, so an undo can skip revisions but lands on one.
+            String last = text.toString();
+            List<String> undone = new ArrayList<>();
+            while (journal.canUndo()) {
+                undone.add(text.toString());
+                undo();
+                assertTrue(revisions.contains(text.toString()), text.toString());
+            }
+            assertEquals("", text.toString());
+            for (int i = undone.size() - 1; i >= 0; i--) {
+                redo();
+                assertEquals(undone.get(i), text.toString());
+            }
+            assertEquals(last, text.toString());
+            assertFalse(journal.canRedo());
+        }
+    }
+
+    private void type(int start, int end, String inserted) {
+        TextEdit edit = new TextEdit(start, end, inserted);
+        String removed = text.substring(start, end);
+        apply(edit);
+        journal.record(edit, removed);
+    }
+
+    private TextEdit undo() {
+        return journal.undo(() -> text, this::apply);
+    }
+
+    private TextEdit redo() {
+        return journal.redo(() -> text, this::apply);
+    }
+
+    private void apply(TextEdit edit) {
+        text.replace(edit.start(), edit.end(), edit.text());
+    }
+}
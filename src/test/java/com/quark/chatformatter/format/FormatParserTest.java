@@ -0,0 +1,101 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FormatParserTest {
+    private static final int GREEN = Style.withColor(Style.PLAIN, 0xa);
+
+    @Test
+    void appliesColorsAndFormats() {
+        SpanList spans = FormatParser.parse("§aGreen §lbold§r plain", false);
+        assertEquals("Green bold plain", spans.text());
+        assertEquals(GREEN, spans.style(spans.spanAt(0)));
+        assertEquals(GREEN | Style.BOLD, spans.style(spans.spanAt(6)));
+        assertEquals(Style.PLAIN, spans.style(spans.spanAt(11)));
+        assertEquals(Style.PLAIN, spans.endStyle());
+    }
+
+    @Test
+    void resetClearsColorAndFormats() {
+        SpanList spans = FormatParser.parse("§c§l§obold§rplain", false);
+        assertEquals(Style.withColor(Style.PLAIN, 0xc) | Style.BOLD | Style.ITALIC, spans.style(spans.spanAt(0)));
+        assertEquals(Style.PLAIN, spans.style(spans.spanAt(4)));
+    }
+
+    @Test
+    void readsHexColors() {
+        SpanList spans = FormatParser.parse("§x§1§2§a§B§c§Dhex", false);
+        assertEquals("hex", spans.text());
+        assertEquals(Style.withRgb(Style.PLAIN, 0x12abcd), spans.style(0));
+    }
+
+    @Test
+    void showsIncompleteHexColorAndUnknownCodes() {
+        SpanList spans = FormatParser.parse("§x§1§2a§zb", false);
+        assertEquals("§xa§zb", spans.text());
+        int unknown = spans.spanAt(0);
+        assertTrue(spans.isSealed(unknown));
+        assertEquals(0, spans.sourceStart(unknown));
+        assertEquals(2, spans.sourceEnd(unknown));
+    }
+
+    @Test
+    void keepsTrailingMarkerAsText() {
+        SpanList spans = FormatParser.parse("end§", false);
+        assertEquals("end§", spans.text());
+    }
+
+    @Test
+    void decodesEscapesOnlyWhenAsked() {
+        String text = "\\u00A7aGreen\\u00a7lbold";
+        SpanList decoded = FormatParser.parse(text, true);
+        assertEquals("Greenbold", decoded.text());
+        assertEquals(GREEN | Style.BOLD, decoded.style(decoded.spanAt(5)));
+
+        SpanList literal = FormatParser.parse(text, false);
+        assertEquals(text, literal.text());
+        assertEquals(Style.PLAIN, literal.endStyle());
+    }
+
+    @Test
+    void decodedEscapeShownAsTextIsSealed() {
+        SpanList spans = FormatParser.parse("a\\u00A7zb", true);
+        assertEquals("a§zb", spans.text());
+        int escape = spans.spanAt(1);
+        assertTrue(spans.isSealed(escape));
+        assertEquals(1, spans.sourceStart(escape));
+        assertEquals(8, spans.sourceEnd(escape));
+        assertFalse(spans.isSealed(spans.spanAt(3)));
+    }
+
+    @Test
+    void escapedFormShowsTheSameAsSectionForm() {
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            String text = Samples.codes(random, random.nextInt(40), false);
+            String escaped = text.replace("§", FormatParser.ESCAPED_SECTION);
+            assertEquals(Samples.styledText(FormatParser.parse(text, false)),
+                    Samples.styledText(FormatParser.parse(escaped, true)), text);
+        }
+    }
+
+    @Test
+    void partialParseContinuesInTheStyleItEndedIn() {
+        Random random = new Random(2);
+        for (int i = 0; i < 2000; i++) {
+            boolean escapes = random.nextBoolean();
+            String text = Samples.codes(random, random.nextInt(40), escapes);
+            SpanList whole = FormatParser.parse(text, escapes);
+            SpanList parts = new SpanList();
+            int split = FormatParser.parse(text, 0, text.length() / 2, text.length(), Style.PLAIN, escapes, parts);
+            FormatParser.parse(text, split, text.length(), parts.endStyle(), escapes, parts);
+            assertEquals(Samples.rendering(whole), Samples.rendering(parts), text);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FormatToggleTest {
+    /**
+     * Codes for the comparison with the regex toggle. It kept the formats of the leading run after
+     * an added {@code §r}, and a {@code §r} inside that run did not keep earlier state out, so the
+     * reset code is left out.
+     */
+    private static final String CODES = "0123456789abcdefklmno";
+
+    @Test
+    void doesNotRepeatAFormatSetRightBeforeTheSelection() {
+        String text = "§lHello§r";
+        FormatToggle.Result result = FormatToggle.toggle(text, 2, 7, 'l', false);
+        assertEquals(List.of(), result.edits());
+        assertEquals(0, result.selectionStart());
+        assertEquals(7, result.selectionEnd());
+
+        result = FormatToggle.toggle("§a§lHi", 4, 6, 'o', false);
+        assertEquals("§a§o§lHi§r", apply("§a§lHi", result));
+    }
+
+    @Test
+    void colorReplacesTheColorsOfTheLeadingCodes() {
+        FormatToggle.Result result = FormatToggle.toggle("x§a§lHi§ry", 5, 7, 'c', false);
+        assertEquals("x§c§lHi§ry", apply("x§a§lHi§ry", result));
+    }
+
+    @Test
+    void resetReplacesTheLeadingCodes() {
+        FormatToggle.Result result = FormatToggle.toggle("§m§7Hi§r§r", 0, 6, 'r', false);
+        assertEquals("§rHi§r", apply("§m§7Hi§r§r", result));
+    }
+
+    @Test
+    void showsTheSameAsTheRegexToggle() {
+        Random random = new Random(80);
+        for (boolean escaped : new boolean[]{false, true}) {
+            String prefix = escaped ? FormatParser.ESCAPED_SECTION : String.valueOf(FormatParser.SECTION);
+            for (int run = 0; run < 5000; run++) {
+                // Text cut into pieces, each a code or a plain character, with the selection between pieces.
+                List<Integer> boundaries = new ArrayList<>();
+                StringBuilder text = new StringBuilder();
+                int pieces = random.nextInt(16);
+                for (int i = 0; i < pieces; i++) {
+                    boundaries.add(text.length());
+                    if (random.nextInt(3) == 0) {
+                        text.append(prefix).append(CODES.charAt(random.nextInt(CODES.length())));
+                    } else {
+                        text.append("HW z\n".charAt(random.nextInt(5)));
+                    }
+                }
+                boundaries.add(text.length());
+                int start = boundaries.get(random.nextInt(boundaries.size()));
+                int end = boundaries.get(random.nextInt(boundaries.size()));
+                if (start > end) {
+                    int swap = start;
+                    start = end;
+                    end = swap;
+                }
+                char code = CODES.charAt(random.nextInt(CODES.length()));
+                String source = text.toString();
+
+                String toggled = apply(source, FormatToggle.toggle(source, start, end, code, escaped));
+                String expected = regexToggle(source, start, end, code, escaped);
+                assertEquals(Samples.styledText(FormatParser.parse(expected, escaped)),
+                        Samples.styledText(FormatParser.parse(toggled, escaped)),
+                        source + " [" + start + ", " + end + ") " + code);
+            }
+        }
+    }
+
+    private static String apply(String text, FormatToggle.Result result) {
+        for (TextEdit edit : result.edits()) {
+            text = Samples.apply(text, edit);
+        }
+        return text;
+    }
+
+    /**
+     * The toggle as it was done on the whole text with regular expressions. Its colour branch
+     * matched only the first code of the leading run, and {@code $} also matched before a final
+     * line break; here both match as intended.
+     */
+    private static String regexToggle(String fullText, int selStart, int selEnd, char code, boolean motd) {
+        String prefix = motd ? "\\u00A7" : "§";
+        String quoted = motd ? "\\\\u00A7" : "§";
+        String startCode = prefix + code;
+        String fullEndCode = prefix + "r";
+
+        String before = fullText.substring(0, selStart);
+        String selected = fullText.substring(selStart, selEnd);
+        String after = fullText.substring(selEnd);
+
+        if (selStart == selEnd) {
+            return before + startCode + after;
+        }
+
+        if (Style.colorIndex(code) >= 0) {
+            int expandedStart = selStart;
+            while (expandedStart >= prefix.length() + 1) {
+                String possibleCode = fullText.substring(expandedStart - prefix.length() - 1, expandedStart);
+                if (possibleCode.matches(quoted + "[0-9a-fk-or]")) {
+                    expandedStart -= prefix.length() + 1;
+                } else {
+                    break;
+                }
+            }
+            before = fullText.substring(0, expandedStart);
+            selected = fullText.substring(expandedStart, selEnd);
+
+            Matcher m = Pattern.compile("^(" + quoted + "[0-9a-fk-or])+").matcher(selected);
+            String prefixCodes = m.find() ? m.group() : "";
+            String withoutColor = prefixCodes.replaceAll(quoted + "[0-9a-f]", "");
+            selected = startCode + withoutColor + selected.substring(prefixCodes.length());
+        } else {
+            int codeLength = prefix.length() + 1;
+            Matcher prefixMatcher = Pattern.compile("^(" + quoted + ".)+").matcher(selected);
+            String prefixCodes = prefixMatcher.find() ? prefixMatcher.group() : "";
+            StringBuilder colorPrefix = new StringBuilder();
+            StringBuilder formatPrefix = new StringBuilder();
+            for (int i = 0; i < prefixCodes.length(); i += codeLength) {
+                String singleCode = prefixCodes.substring(i, i + codeLength);
+                char codeChar = singleCode.charAt(codeLength - 1);
+                if (codeChar == 'r') {
+                    continue;
+                }
+                if (Style.colorIndex(codeChar) >= 0) {
+                    colorPrefix.append(singleCode);
+                } else {
+                    formatPrefix.append(singleCode);
+                }
+            }
+            selected = colorPrefix + startCode + formatPrefix + selected.substring(prefixCodes.length());
+        }
+        selected = selected.replaceAll("(" + quoted + "r)+\\z", "");
+        after = after.replaceAll("^(" + quoted + "r)+", "");
+        return (before + selected + fullEndCode + after).replaceAll("(" + quoted + "r){2,}", motd ? "\\\\u00A7r" : "§r");
+    }
+}
@@ -0,0 +1,57 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GradientTest {
+
+    @Test
+    void colorsEachCharacterAlongTheStops() {
+        FormatToggle.Result result = Gradient.apply("abc", 0, 3, new int[]{0xFF0000, 0x0000FF}, true);
+        String text = Samples.apply("abc", result.edits().get(0));
+        SpanList spans = FormatParser.parse(text, false);
+        assertEquals("abc", spans.text());
+        assertEquals(Style.withRgb(Style.PLAIN, 0xFF0000), spans.style(spans.spanAt(0)));
+        assertEquals(Style.withRgb(Style.PLAIN, 0x800080), spans.style(spans.spanAt(1)));
+        assertEquals(Style.withRgb(Style.PLAIN, 0x0000FF), spans.style(spans.spanAt(2)));
+    }
+
+    @Test
+    void keepsFormatsAndTheTextAroundTheSelection() {
+        for (boolean hex : new boolean[]{false, true}) {
+            Random random = new Random(hex ? 61 : 60);
+            for (int run = 0; run < 3000; run++) {
+                String text = Samples.codes(random, random.nextInt(60), false);
+                int start = random.nextInt(text.length() + 1);
+                int end = start + random.nextInt(text.length() - start + 1);
+                FormatToggle.Result result = Gradient.apply(text, start, end, Gradient.RAINBOW, hex);
+                String next = result.edits().isEmpty() ? text : Samples.apply(text, result.edits().get(0));
+
+                SpanList before = FormatParser.parse(text, false);
+                SpanList after = FormatParser.parse(next, false);
+                assertEquals(before.text(), after.text(), text);
+                // Code pairing restarts at the rewritten range's ends, so their shown offsets can be found apart.
+                int visibleFrom = FormatParser.parse(next.substring(0, result.selectionStart()), false).length();
+                int visibleTo = after.length()
+                        - FormatParser.parse(next.substring(result.selectionEnd()), false).length();
+                for (int i = 0; i < after.length(); i++) {
+                    int was = before.style(before.spanAt(i));
+                    int is = after.style(after.spanAt(i));
+                    if (i < visibleFrom || i >= visibleTo) {
+                        assertEquals(was, is, text);
+                    } else {
+                        assertEquals(Style.formats(was), Style.formats(is), text);
+                        char c = after.charAt(i);
+                        if (c != ' ' && c != '\n') {
+                            assertTrue(Style.hasColor(is) && Style.isHex(is) == hex, text);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
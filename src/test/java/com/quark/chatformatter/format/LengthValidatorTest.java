@@ -0,0 +1,62 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LengthValidatorTest {
+    /** Tight enough that short random texts break every limit now and then. */
+    private static final LengthValidator.Profile TIGHT = new LengthValidator.Profile("Tight", 30, 40, 20, 3, 30);
+
+    @Test
+    void measuresCodesEscapesAndLines() {
+        LengthValidator validator = new LengthValidator(TIGHT);
+        validator.reset("§lab\ncd");
+        assertEquals(7, validator.length());
+        assertEquals(7 + 5 + 1, validator.escapedLength());
+        assertEquals(5, validator.visibleLength());
+        assertEquals(2, validator.lineCount());
+        assertTrue(validator.report().isValid());
+
+        validator.update("§lab\ncd\n\n", new TextEdit(7, 7, "\n\n"), "");
+        LengthValidator.Report report = validator.report();
+        assertFalse(report.isValid());
+        assertEquals(List.of(new LengthValidator.Violation("4/3 lines", 7, 7)), report.violations());
+        assertSame(report, validator.report());
+    }
+
+    @Test
+    void updatesMatchAFreshBuild() {
+        Random random = new Random(100);
+        List<LengthValidator.Profile> profiles = List.of(TIGHT, LengthValidator.Profile.CHAT,
+                LengthValidator.Profile.MOTD, LengthValidator.Profile.BOOK_PAGE);
+        for (int run = 0; run < 200; run++) {
+            String text = Samples.codes(random, random.nextInt(60), false);
+            LengthValidator validator = new LengthValidator(TIGHT);
+            validator.reset(text);
+            for (int step = 0; step < 30; step++) {
+                if (random.nextInt(8) == 0) {
+                    validator.setProfile(profiles.get(random.nextInt(profiles.size())));
+                }
+                TextEdit edit = Samples.edit(random, text, false);
+                String removed = text.substring(edit.start(), edit.end());
+                text = Samples.apply(text, edit);
+                validator.update(text, edit, removed);
+
+                LengthValidator fresh = new LengthValidator(validator.profile());
+                fresh.reset(text);
+                assertEquals(fresh.length(), validator.length(), text);
+                assertEquals(fresh.escapedLength(), validator.escapedLength(), text);
+                assertEquals(fresh.visibleLength(), validator.visibleLength(), text);
+                assertEquals(fresh.lineCount(), validator.lineCount(), text);
+                assertEquals(fresh.report(), validator.report(), text);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OffsetIndexTest {
+
+    @Test
+    void mapsAroundCodes() {
+        OffsetIndex index = new OffsetIndex();
+        index.reset("a§lb§x§1§2§3§4§5§6c");
+        assertEquals(3, index.visibleLength());
+        assertEquals(8, index.codeCount());
+        assertEquals(1, index.toVisible(1));
+        assertEquals(1, index.toVisible(2));
+        assertEquals(1, index.toVisible(3));
+        assertEquals(2, index.toVisible(5));
+        assertEquals(1, index.toSource(1, false));
+        assertEquals(3, index.toSource(1, true));
+        assertEquals(18, index.toSource(2, true));
+    }
+
+    @Test
+    void updatesMatchAFreshIndex() {
+        Random random = new Random(20);
+        for (int run = 0; run < 200; run++) {
+            String text = Samples.codes(random, random.nextInt(60), false);
+            OffsetIndex index = new OffsetIndex();
+            index.reset(text);
+            for (int step = 0; step < 50; step++) {
+                TextEdit edit = Samples.edit(random, text, false);
+                text = Samples.apply(text, edit);
+                index.update(text, edit);
+
+                OffsetIndex fresh = new OffsetIndex();
+                fresh.reset(text);
+                assertEquals(text.length(), index.length(), text);
+                assertEquals(FormatParser.parse(text, false).length(), index.visibleLength(), text);
+                assertEquals(fresh.codeCount(), index.codeCount(), text);
+                for (int i = 0; i <= text.length(); i++) {
+                    assertEquals(fresh.toVisible(i), index.toVisible(i), text);
+                }
+                for (int i = 0; i <= fresh.visibleLength(); i++) {
+                    assertEquals(fresh.toSource(i, false), index.toSource(i, false), text);
+                    assertEquals(fresh.toSource(i, true), index.toSource(i, true), text);
+                }
+            }
+        }
+    }
+}
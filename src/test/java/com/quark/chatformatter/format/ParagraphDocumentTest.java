@@ -0,0 +1,88 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ParagraphDocumentTest {
+
+    @Test
+    void splitsIntoParagraphsCarryingTheStyle() {
+        ParagraphDocument<String> document = new ParagraphDocument<>(Samples::styledText);
+        document.reset("§aone\ntwo§l\nthree", false);
+        assertEquals(3, document.size());
+        assertEquals(6, document.start(1));
+        assertEquals(11, document.end(1));
+        assertEquals(Style.withColor(Style.PLAIN, 0xa), document.incomingStyle(1));
+        assertEquals(Style.withColor(Style.PLAIN, 0xa) | Style.BOLD, document.incomingStyle(2));
+        assertEquals(1, document.paragraphAt(11));
+        assertEquals(2, document.paragraphAt(12));
+    }
+
+    @Test
+    void editsMatchAFreshDocument() {
+        for (boolean escapes : new boolean[]{false, true}) {
+            Random random = new Random(escapes ? 31 : 30);
+            for (int run = 0; run < 200; run++) {
+                ParagraphDocument<String> document = new ParagraphDocument<>(Samples::styledText, 16);
+                String text = Samples.codes(random, random.nextInt(80), escapes);
+                document.reset(text, escapes);
+                for (int step = 0; step < 50; step++) {
+                    TextEdit edit = Samples.edit(random, text, escapes);
+                    String next = Samples.apply(text, edit);
+                    List<String> before = paragraphs(document);
+                    ParagraphDocument.Change<String> change = document.edit(next, edit.start(), edit.end(),
+                            edit.start() + edit.text().length());
+
+                    ParagraphDocument<String> fresh = new ParagraphDocument<>(Samples::styledText);
+                    fresh.reset(next, escapes);
+                    assertEquals(describe(fresh), describe(document), next);
+
+                    List<String> expected = new ArrayList<>(before.subList(0, change.start()));
+                    expected.addAll(change.inserted());
+                    expected.addAll(before.subList(change.start() + change.removed().size(), before.size()));
+                    assertEquals(expected, paragraphs(document), next);
+                    text = next;
+                }
+            }
+        }
+    }
+
+    @Test
+    void reusesCachedParagraphs() {
+        ParagraphDocument<String> document = new ParagraphDocument<>(Samples::styledText);
+        document.reset("§aone\ntwo\nthree", false);
+        document.update("§aone\ntwo\nthree", "§aone\ntwo\nthree!");
+        document.update("§aone\ntwo\nthree!", "§aone\ntwo\nthree");
+        assertEquals(1, document.parsedCount());
+        assertEquals(1, document.cachedCount());
+    }
+
+    @Test
+    void rejectsEmptyCache() {
+        assertThrows(IllegalArgumentException.class, () -> new ParagraphDocument<>(Samples::styledText, 0));
+    }
+
+    private static List<String> paragraphs(ParagraphDocument<String> document) {
+        List<String> paragraphs = new ArrayList<>();
+        for (int i = 0; i < document.size(); i++) {
+            paragraphs.add(document.paragraph(i));
+        }
+        return paragraphs;
+    }
+
+    private static String describe(ParagraphDocument<String> document) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < document.size(); i++) {
+            out.append(document.start(i)).append('-').append(document.end(i)).append(' ')
+                    .append(Integer.toHexString(document.incomingStyle(i))).append('\n')
+                    .append(document.paragraph(i));
+        }
+        return out.append(Integer.toHexString(document.endStyle())).toString();
+    }
+}
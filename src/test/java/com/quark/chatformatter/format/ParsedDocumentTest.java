@@ -0,0 +1,59 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ParsedDocumentTest {
+
+    @Test
+    void editsMatchAFreshParse() {
+        for (boolean escapes : new boolean[]{false, true}) {
+            Random random = new Random(escapes ? 11 : 10);
+            for (int run = 0; run < 200; run++) {
+                ParsedDocument document = new ParsedDocument(escapes);
+                String text = Samples.codes(random, random.nextInt(60), escapes);
+                document.reset(text, escapes);
+                for (int step = 0; step < 50; step++) {
+                    TextEdit edit = Samples.edit(random, text, escapes);
+                    String next = Samples.apply(text, edit);
+                    String before = document.spans().text();
+                    ParsedDocument.Change change = document.edit(next, edit.start(), edit.end(),
+                            edit.start() + edit.text().length());
+                    assertEquals(Samples.rendering(FormatParser.parse(next, escapes)),
+                            Samples.rendering(document.spans()), next);
+                    assertEquals(document.spans().text(), before.substring(0, change.start())
+                            + change.inserted().text() + before.substring(change.end()), next);
+                    text = next;
+                }
+            }
+        }
+    }
+
+    @Test
+    void updateFindsTheEditItself() {
+        Random random = new Random(12);
+        ParsedDocument document = new ParsedDocument(false);
+        String text = "";
+        for (int step = 0; step < 2000; step++) {
+            String next = Samples.apply(text, Samples.edit(random, text, false));
+            document.update(text, next);
+            assertEquals(Samples.rendering(FormatParser.parse(next, false)), Samples.rendering(document.spans()));
+            text = next;
+        }
+        assertNull(document.update(text, new String(text)));
+    }
+
+    @Test
+    void updateFromOtherTextResets() {
+        ParsedDocument document = new ParsedDocument(false);
+        document.reset("§aone", false);
+        ParsedDocument.Change change = document.update("something else", "§btwo");
+        assertEquals(0, change.start());
+        assertEquals(3, change.end());
+        assertEquals(Samples.rendering(FormatParser.parse("§btwo", false)), Samples.rendering(document.spans()));
+    }
+}
@@ -0,0 +1,74 @@
+package com.quark.chatformatter.format;
+
+import java.util.Random;
+
+/**
+ * Random code text for the fuzz tests, and a way to compare what two parses show.
+ */
+final class Samples {
+    /** Characters that make up codes, hex colours included, next to plain text, spaces and line breaks. */
+    private static final String PIECES = "§§§§§§x0123456789aAfFlLmnokrRzZ  b\n";
+
+    private Samples() {
+    }
+
+    /**
+     * Random text of about {@code length} characters, with {@code \\u00A7} escapes and broken
+     * escapes mixed in if {@code escapes} is set.
+     */
+    static String codes(Random random, int length, boolean escapes) {
+        StringBuilder text = new StringBuilder(length + 8);
+        while (text.length() < length) {
+            if (escapes && random.nextInt(8) == 0) {
+                text.append(random.nextInt(4) == 0 ? "\\u00" : random.nextBoolean() ? "\\u00A7" : "\\u00a7");
+            } else {
+                text.append(PIECES.charAt(random.nextInt(PIECES.length())));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * A random edit of {@code text}: a deletion, an insertion or a replacement, mostly short.
+     */
+    static TextEdit edit(Random random, String text, boolean escapes) {
+        int start = random.nextInt(text.length() + 1);
+        int end = Math.min(text.length(), start + (random.nextInt(4) == 0 ? random.nextInt(20) : random.nextInt(3)));
+        String inserted = codes(random, random.nextInt(3) == 0 ? 0 : random.nextInt(12), escapes);
+        return new TextEdit(start, end, inserted);
+    }
+
+    static String apply(String text, TextEdit edit) {
+        return text.substring(0, edit.start()) + edit.text() + text.substring(edit.end());
+    }
+
+    /**
+     * Shown text with, per character, its style and where in the source it comes from, so that
+     * parses cut into spans differently compare equal when they show the same thing.
+     */
+    static String rendering(SpanList spans) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < spans.size(); i++) {
+            for (int j = spans.start(i); j < spans.end(i); j++) {
+                int source = spans.isSealed(i) ? spans.sourceStart(i) : spans.sourceStart(i) + j - spans.start(i);
+                out.append(spans.charAt(j)).append(' ')
+                        .append(Integer.toHexString(spans.style(i))).append(' ')
+                        .append(source).append('\n');
+            }
+        }
+        return out.append("end ").append(Integer.toHexString(spans.endStyle())).toString();
+    }
+
+    /**
+     * Shown text with the style of each character, without source offsets.
+     */
+    static String styledText(SpanList spans) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < spans.size(); i++) {
+            for (int j = spans.start(i); j < spans.end(i); j++) {
+                out.append(spans.charAt(j)).append(' ').append(Integer.toHexString(spans.style(i))).append('\n');
+            }
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SpanListTest {
+
+    @Test
+    void splicesInsideOneSpan() {
+        SpanList spans = splice("§aabcdef", 3, 5, "XYZ");
+        assertEquals(1, spans.size());
+    }
+
+    @Test
+    void splicesAcrossSpans() {
+        splice("§aab§lcd§ref", 3, 7, "Q§l");
+    }
+
+    @Test
+    void splicesSealedSpan() {
+        splice("a§zb", 1, 3, "§y");
+    }
+
+    @Test
+    void splicesEmptyRangeAndMergesNeighbours() {
+        SpanList spans = splice("§aab§lc", 4, 4, "XY");
+        assertEquals(2, spans.size());
+    }
+
+    @Test
+    void splicesDeletion() {
+        SpanList spans = splice("ab§l§rcd", 2, 6, "");
+        assertEquals(1, spans.size());
+    }
+
+    @Test
+    void splicesAtBothEnds() {
+        splice("§aab", 0, 0, "§r");
+        splice("§aab", 4, 4, "c§ld");
+    }
+
+    /**
+     * Replaces {@code text[from, to)}, both clean points, with {@code replacement} that leaves the
+     * text after it in the same style, and checks the spliced spans against a fresh parse.
+     */
+    private static SpanList splice(String text, int from, int to, String replacement) {
+        String next = text.substring(0, from) + replacement + text.substring(to);
+        SpanList spans = FormatParser.parse(text, false);
+        SpanList head = FormatParser.parse(text.substring(0, from), false);
+        int visibleTo = FormatParser.parse(text.substring(0, to), false).length();
+        SpanList fresh = new SpanList();
+        FormatParser.parse(next, from, from + replacement.length(), head.endStyle(), false, fresh);
+
+        spans.splice(from, to, head.length(), visibleTo, fresh, next.length() - text.length());
+        if (to == text.length()) {
+            spans.endStyle(fresh.endStyle());
+        }
+        assertEquals(Samples.rendering(FormatParser.parse(next, false)), Samples.rendering(spans), next);
+        return spans;
+    }
+}
@@ -0,0 +1,63 @@
+package com.quark.chatformatter.format;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TextComponentsTest {
+
+    @Test
+    void writesRuns() {
+        assertEquals("{\"text\":\"\"}", TextComponents.toJson(FormatParser.parse("", false)));
+        assertEquals("{\"text\":\"hi\",\"color\":\"green\",\"bold\":true}",
+                TextComponents.toJson(FormatParser.parse("§a§lhi", false)));
+    }
+
+    @Test
+    void readsComponents() {
+        assertEquals("§aGreen§r§lbold",
+                TextComponents.toCodes("{\"text\":\"Green\",\"color\":\"green\",\"extra\":[{\"text\":\"bold\",\"color\":\"reset\",\"bold\":true}]}"));
+        assertEquals("§x§1§2§a§b§c§dhex", TextComponents.toCodes("{\"text\":\"hex\",\"color\":\"#12ABCD\"}"));
+        assertEquals("plain", TextComponents.toCodes("[\"pl\",{\"text\":\"ain\"}]"));
+    }
+
+    @Test
+    void styleAfterTextStillApplies() {
+        assertEquals(TextComponents.toCodes("{\"color\":\"red\",\"text\":\"a\",\"extra\":[\"b\"]}"),
+                TextComponents.toCodes("{\"extra\":[\"b\"],\"text\":\"a\",\"color\":\"red\"}"));
+    }
+
+    @Test
+    void roundTripsCodes() {
+        Random random = new Random(50);
+        for (int run = 0; run < 5000; run++) {
+            String text = Samples.codes(random, random.nextInt(60), false);
+            SpanList spans = FormatParser.parse(text, false);
+            String codes = TextComponents.toCodes(TextComponents.toJson(spans));
+            assertEquals(Samples.styledText(spans), Samples.styledText(FormatParser.parse(codes, false)), text);
+        }
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertThrows(IllegalArgumentException.class, () -> TextComponents.toCodes("{\"text\":"));
+        assertThrows(IllegalArgumentException.class, () -> TextComponents.toCodes("\"a\" \"b\""));
+        assertThrows(IllegalArgumentException.class, () -> TextComponents.toCodes("[\"a\""));
+    }
+
+    @Test
+    void limitsNesting() {
+        assertEquals("a", TextComponents.toCodes(nested(TextComponents.MAX_DEPTH)));
+        assertThrows(IllegalArgumentException.class, () -> TextComponents.toCodes(nested(TextComponents.MAX_DEPTH + 1)));
+    }
+
+    /**
+     * {@code "a"} inside {@code depth} arrays.
+     */
+    private static String nested(int depth) {
+        return "[".repeat(depth) + "\"a\"" + "]".repeat(depth);
+    }
+}